@@ -64,6 +64,9 @@ public abstract class AbstractApi {
     if (state.sessionCookie != null) {
       headers.set("Cookie", state.sessionCookie);
     }
+    if (state.sessionToken != null) {
+      headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + state.sessionToken);
+    }
     if (requestBody instanceof MultiValueMap) {
       headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
     }
@@ -1,15 +1,21 @@
 package com.xinra.reviewcommunity.android;
 
 import com.google.common.collect.ImmutableMap;
+import com.xinra.reviewcommunity.shared.ApiException;
 import com.xinra.reviewcommunity.shared.OrderBy;
+import com.xinra.reviewcommunity.shared.ProductSearchOrder;
+import com.xinra.reviewcommunity.shared.dto.BarcodeResolutionDto;
 import com.xinra.reviewcommunity.shared.dto.CreateProductDto;
 import com.xinra.reviewcommunity.shared.dto.CreateReviewDto;
 import com.xinra.reviewcommunity.shared.dto.CsrfTokenDto;
 import com.xinra.reviewcommunity.shared.dto.InitDto;
 import com.xinra.reviewcommunity.shared.dto.ProductDto;
+import com.xinra.reviewcommunity.shared.dto.ProductSearchResultDto;
+import com.xinra.reviewcommunity.shared.dto.ProductSuggestionDto;
 import com.xinra.reviewcommunity.shared.dto.RegistrationDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewCommentDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewDto;
+import com.xinra.reviewcommunity.shared.dto.ReviewPageDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewVoteDto;
 import com.xinra.reviewcommunity.shared.dto.SerialDto;
 import com.xinra.reviewcommunity.shared.dto.SuccessfulAuthenticationDto;
@@ -19,13 +25,28 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
 import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
 
 public class Api extends AbstractApi {
 
+  /**
+   * Maximum number of barcodes the server resolves at once.
+   */
+  private static final int MAX_BARCODE_BATCH_SIZE = 500;
+
+  /**
+   * Number of times a batch of scanned barcodes is sent again before it is given up.
+   */
+  private static final int MAX_BARCODE_BATCH_RETRIES = 3;
+
   public Api(AppState state) {
     super(state);
   }
@@ -59,7 +80,21 @@ public class Api extends AbstractApi {
   }
 
   public Single<List<ProductDto>> getProductList(String query) {
-    return withResponse("/product?q={query}", HttpMethod.GET, ProductDto[].class, null, false, ImmutableMap.of("query", query))
+    return withResponse("/product?q={query}", HttpMethod.GET, ProductSearchResultDto.class, null, false, ImmutableMap.of("query", query))
+        .map(ProductSearchResultDto::getProducts);
+  }
+
+  public Single<List<ProductDto>> getProductList(String query, ProductSearchOrder orderBy, int offset, int limit) {
+    return searchProducts(query, orderBy, offset, limit).map(ProductSearchResultDto::getProducts);
+  }
+
+  public Single<ProductSearchResultDto> searchProducts(String query, ProductSearchOrder orderBy, int offset, int limit) {
+    return withResponse("/product?q={query}&orderBy={orderBy}&offset={offset}&limit={limit}", HttpMethod.GET, ProductSearchResultDto.class, null, false,
+        ImmutableMap.of("query", query, "orderBy", orderBy, "offset", offset, "limit", limit));
+  }
+
+  public Single<List<ProductSuggestionDto>> getProductSuggestions(String prefix) {
+    return withResponse("/product/suggest?prefix={prefix}", HttpMethod.GET, ProductSuggestionDto[].class, null, false, ImmutableMap.of("prefix", prefix))
         .map(Arrays::asList);
   }
 
@@ -68,9 +103,28 @@ public class Api extends AbstractApi {
         .map(Arrays::asList);
   }
 
+  /**
+   * Returns all reviews of a product. The pages are requested one after another until there is no
+   * next cursor.
+   */
   public Single<List<ReviewDto>> getReviewList(int productSerial, OrderBy orderBy) {
-    return withResponse("/product/{productSerial}/review?orderBy={orderBy}", HttpMethod.GET, ReviewDto[].class, null, false, ImmutableMap.of("productSerial", productSerial, "orderBy", orderBy))
-        .map(Arrays::asList);
+    return getReviewPages(productSerial, orderBy, null)
+        .concatMapIterable(ReviewPageDto::getReviews)
+        .toList();
+  }
+
+  private Observable<ReviewPageDto> getReviewPages(int productSerial, OrderBy orderBy, String cursor) {
+    return getReviewPage(productSerial, orderBy, cursor).toObservable()
+        .concatMap(page -> page.getNextCursor() == null
+            ? Observable.just(page)
+            : Observable.just(page).concatWith(getReviewPages(productSerial, orderBy, page.getNextCursor())));
+  }
+
+  public Single<ReviewPageDto> getReviewPage(int productSerial, OrderBy orderBy, String cursor) {
+    if (cursor == null) {
+      return withResponse("/product/{productSerial}/review?orderBy={orderBy}", HttpMethod.GET, ReviewPageDto.class, null, false, ImmutableMap.of("productSerial", productSerial, "orderBy", orderBy));
+    }
+    return withResponse("/product/{productSerial}/review?orderBy={orderBy}&cursor={cursor}", HttpMethod.GET, ReviewPageDto.class, null, false, ImmutableMap.of("productSerial", productSerial, "orderBy", orderBy, "cursor", cursor));
   }
 
   public Single<List<ReviewCommentDto>> getCommentList(int productSerial, int reviewSerial) {
@@ -86,6 +140,43 @@ public class Api extends AbstractApi {
     return withResponse("/product/serial?barcode={barcode}", HttpMethod.GET, Integer.class, null, false, ImmutableMap.of("barcode", barcode));
   }
 
+  public Single<List<BarcodeResolutionDto>> resolveBarcodes(List<String> barcodes) {
+    return withResponse("/product/serial/batch", HttpMethod.POST, BarcodeResolutionDto[].class, barcodes, false, null)
+        .map(Arrays::asList);
+  }
+
+  /**
+   * Resolves continuously scanned barcodes with one request per batch instead of one per barcode.
+   * A batch is sent once it is full or the time span has passed since the previous one.
+   * A failed batch is retried with growing delays. If it still fails, it is passed to
+   * onBatchError and skipped, so that the following batches are still resolved.
+   */
+  public Observable<BarcodeResolutionDto> resolveScannedBarcodes(Observable<String> barcodes, long timespan, TimeUnit unit, Consumer<Throwable> onBatchError) {
+    return barcodes.buffer(timespan, unit, MAX_BARCODE_BATCH_SIZE)
+        .filter(batch -> !batch.isEmpty())
+        .concatMap(batch -> resolveBarcodes(batch)
+            .retryWhen(this::retryWithBackoff)
+            .doOnError(onBatchError)
+            .onErrorReturnItem(Collections.emptyList())
+            .flattenAsObservable(resolutions -> resolutions));
+  }
+
+  /**
+   * Retries after 1, 2, 4... seconds. Client errors (e.g. a malformed request) are not retried,
+   * because they would occur again.
+   */
+  private Flowable<Long> retryWithBackoff(Flowable<Throwable> errors) {
+    return errors.zipWith(Flowable.range(1, MAX_BARCODE_BATCH_RETRIES + 1), (error, attempt) ->
+        attempt > MAX_BARCODE_BATCH_RETRIES || isClientError(error)
+            ? Flowable.<Long>error(error)
+            : Flowable.timer(1L << (attempt - 1), TimeUnit.SECONDS))
+        .flatMap(delay -> delay);
+  }
+
+  private static boolean isClientError(Throwable error) {
+    return error instanceof ApiException && ((ApiException) error).getStatus() < 500;
+  }
+
   public Single<SerialDto> createProduct(CreateProductDto createProductDto) {
     return withResponse("/product", HttpMethod.POST, SerialDto.class, createProductDto, false, null);
   }
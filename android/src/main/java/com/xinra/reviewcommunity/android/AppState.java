@@ -29,6 +29,8 @@ public class AppState {
   // For these we don't need to notify observers of updates.
   public CsrfTokenDto csrfToken;
   public String sessionCookie;
+  /** Only used if the server doesn't use sessions. */
+  public String sessionToken;
   public final BehaviorSubject<Optional<UserDto>> authenticatedUser = BehaviorSubject.createDefault(Optional.absent());
   public final BehaviorSubject<Set<Permission>> permissions = BehaviorSubject.create();
 
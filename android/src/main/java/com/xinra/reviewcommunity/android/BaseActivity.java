@@ -198,6 +198,7 @@ public abstract class BaseActivity extends AbstractActivity
 
   private void logout() {
     getApi().deleteSession().subscribe(() -> {
+      getState().sessionToken = null;
       getState().authenticatedUser.onNext(Optional.absent());
       getState().permissions.onNext(Collections.emptySet());
       navUsername.setText(R.string.unauthenticated_username);
@@ -14,6 +14,7 @@ public class LoginActivity extends AbstractActivity {
   public static void login(AbstractActivity activity, String usernameOrEmail, String password) {
     activity.getApi().getSession(usernameOrEmail, password).subscribe(auth -> {
       activity.getState().csrfToken = auth.getCsrfToken();
+      activity.getState().sessionToken = auth.getSessionToken();
       activity.getState().permissions.onNext(auth.getPermissions());
       activity.getState().authenticatedUser.onNext(Optional.of(auth.getUser()));
       Toast.makeText(activity, "Signed in as " + auth.getUser().getName(), Toast.LENGTH_SHORT).show();
@@ -9,12 +9,10 @@ import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
 import org.springframework.core.annotation.AliasFor;
 import org.springframework.security.access.ConfigAttribute;
-import org.springframework.security.access.SecurityConfig;
 import org.springframework.security.access.annotation.AnnotationMetadataExtractor;
 import org.springframework.security.access.annotation.Secured;
 
@@ -53,18 +51,17 @@ public @interface AccessRequires {
     public Collection<? extends ConfigAttribute> 
         extractAttributes(AccessRequires securityAnnotation) {
       
-      Permission[] permissions = securityAnnotation.permissions();
-      Role[] roles = securityAnnotation.roles();
-      List<ConfigAttribute> attributes = new ArrayList<>(permissions.length + roles.length);
-
-      for (Permission permission : permissions) {
-        attributes.add(new SecurityConfig(permission.toString()));
+      long mask = 0;
+      for (Permission permission : securityAnnotation.permissions()) {
+        mask |= permission.getMask();
       }
-      for (Role role : roles) {
-        attributes.add(new SecurityConfig(role.toString()));
+      for (Role role : securityAnnotation.roles()) {
+        mask |= role.getMask();
       }
 
-      return attributes;
+      // without any authorities the method isn't secured
+      return mask == 0 ? Collections.emptyList()
+          : Collections.singletonList(new AuthorityMaskAttribute(mask));
     }
   }
 }
@@ -0,0 +1,35 @@
+package com.xinra.reviewcommunity.auth;
+
+import com.xinra.reviewcommunity.shared.Role;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.ConfigAttribute;
+
+/**
+ * The roles and permissions of which at least one is required for access, as an authority mask
+ * (see {@link Role#getAuthorityMask(java.util.Collection)}). Created from {@link AccessRequires}
+ * and decided by the {@link PermissionVoter}.
+ */
+@Getter
+@RequiredArgsConstructor
+public class AuthorityMaskAttribute implements ConfigAttribute {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long mask;
+
+  /**
+   * Returns {@code null} because the attribute can't be represented as a string. This way the
+   * voters of Spring Security abstain.
+   */
+  @Override
+  public String getAttribute() {
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return "AuthorityMask[" + Long.toHexString(mask) + "]";
+  }
+
+}
@@ -1,10 +1,11 @@
 package com.xinra.reviewcommunity.auth;
 
+import com.google.common.collect.ImmutableMap;
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
 import com.xinra.reviewcommunity.shared.Permission;
+import com.xinra.reviewcommunity.shared.Role;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 import org.springframework.security.access.AccessDecisionVoter;
 import org.springframework.security.access.ConfigAttribute;
 import org.springframework.security.access.annotation.Secured;
@@ -13,10 +14,10 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 
 /**
- * Enables the use of {@link Permission}s as authorities in Spring Security. The default
- * {@link RoleVoter} only supports authorities prefixed with "ROLE_". That's how roles are
- * distinguished from other authorities. This implementation doesn't rely on a prefix but checks if
- * the authority is contained in the {@link Permission} enum.
+ * Decides {@link AuthorityMaskAttribute}s, which enable the use of {@link Permission}s and
+ * {@link Role}s with Spring Security. The authority mask of the user is carried by the
+ * {@link AuthenticatedUserDto}, so access is decided with a single AND operation instead of
+ * comparing the strings of granted authorities.
  * 
  * <p>Voters are not used everywhere to check authorities. They are, however, used for method
  * security. This class is required for {@link AccessRequires} to work in place of
@@ -25,25 +26,25 @@ import org.springframework.security.core.GrantedAuthority;
 public class PermissionVoter implements AccessDecisionVoter<Object> {
   
   /**
-   * This is a cache of string representations of all permissions. This way we can use
-   * {@link Set#contains(Object)} instead of {@link Permission#valueOf(String)} in
-   * {@link #supports(ConfigAttribute)}.
+   * Masks of the string representations of all roles and permissions. Only needed for
+   * authentications that haven't been created from an {@link AuthenticatedUserDto}.
    */
-  private final Set<String> permissions;
+  private static final ImmutableMap<String, Long> MASKS_BY_AUTHORITY;
   
-  /**
-   * Creates a PermissionVoter.
-   */
-  public PermissionVoter() {
-    permissions = new HashSet<>();
+  static {
+    ImmutableMap.Builder<String, Long> masks = ImmutableMap.builder();
     for (Permission permission : Permission.values()) {
-      permissions.add(permission.name());
+      masks.put(permission.toString(), permission.getMask());
     }
+    for (Role role : Role.values()) {
+      masks.put(role.toString(), role.getMask());
+    }
+    MASKS_BY_AUTHORITY = masks.build();
   }
 
   @Override
   public boolean supports(ConfigAttribute attribute) {
-    return permissions.contains(attribute.getAttribute());
+    return attribute instanceof AuthorityMaskAttribute;
   }
 
   @Override
@@ -63,22 +64,29 @@ public class PermissionVoter implements AccessDecisionVoter<Object> {
       return ACCESS_DENIED;
     }
     int result = ACCESS_ABSTAIN;
-    Collection<? extends GrantedAuthority> authorities = authentication.getAuthorities();
+    final long mask = getAuthorityMask(authentication);
 
     for (ConfigAttribute attribute : attributes) {
       if (this.supports(attribute)) {
         result = ACCESS_DENIED;
-
-        // Attempt to find a matching granted authority
-        for (GrantedAuthority authority : authorities) {
-          if (attribute.getAttribute().equals(authority.getAuthority())) {
-            return ACCESS_GRANTED;
-          }
+        if ((mask & ((AuthorityMaskAttribute) attribute).getMask()) != 0) {
+          return ACCESS_GRANTED;
         }
       }
     }
 
     return result;
   }
+  
+  private static long getAuthorityMask(Authentication authentication) {
+    if (authentication.getPrincipal() instanceof AuthenticatedUserDto) {
+      return ((AuthenticatedUserDto) authentication.getPrincipal()).getAuthorityMask();
+    }
+    long mask = 0;
+    for (GrantedAuthority authority : authentication.getAuthorities()) {
+      mask |= MASKS_BY_AUTHORITY.getOrDefault(authority.getAuthority(), 0L);
+    }
+    return mask;
+  }
 
 }
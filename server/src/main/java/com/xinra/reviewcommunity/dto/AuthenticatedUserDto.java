@@ -17,4 +17,10 @@ public class AuthenticatedUserDto extends UserDto {
   private @NonNull Set<Permission> permissions;
   private @NonNull Set<Role> roles;
   
+  /**
+   * The transitive roles and permissions as an authority mask (see
+   * {@link Role#getAuthorityMask(java.util.Collection)}).
+   */
+  private long authorityMask;
+  
 }
@@ -1,7 +1,9 @@
 package com.xinra.reviewcommunity.entity;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.OneToOne;
+import javax.persistence.Table;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -9,6 +11,7 @@ import lombok.Setter;
 @Entity
 @Getter
 @Setter
+@Table(indexes = @Index(columnList = "code, market_id"))
 public class Barcode extends MarketSpecificEntity {
   
   /**
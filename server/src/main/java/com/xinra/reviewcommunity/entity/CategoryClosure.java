@@ -0,0 +1,37 @@
+package com.xinra.reviewcommunity.entity;
+
+import com.xinra.nucleus.entity.BaseEntity;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * One entry of the transitive closure of the category hierarchy: The descendant is (transitively)
+ * included in the ancestor. Every category is also its own ancestor with depth 0. Must be updated
+ * whenever categories are created or moved.
+ */
+@Entity
+@Getter
+@Setter
+@Table(
+    uniqueConstraints = @UniqueConstraint(columnNames = {"ancestor_id", "descendant_id"}),
+    indexes = @Index(columnList = "descendant_id"))
+public class CategoryClosure extends BaseEntity {
+
+  @ManyToOne(optional = false)
+  private @NonNull Category ancestor;
+
+  @ManyToOne(optional = false)
+  private @NonNull Category descendant;
+
+  /**
+   * Number of levels between ancestor and descendant.
+   */
+  private int depth;
+
+}
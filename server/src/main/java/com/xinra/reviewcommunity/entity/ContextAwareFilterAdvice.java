@@ -3,6 +3,7 @@ package com.xinra.reviewcommunity.entity;
 import com.xinra.nucleus.common.ContextHolder;
 import com.xinra.reviewcommunity.Context;
 import com.xinra.reviewcommunity.repo.MarketRepository;
+import com.xinra.reviewcommunity.service.MarketRegistry;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import org.aspectj.lang.JoinPoint;
@@ -24,7 +25,7 @@ public class ContextAwareFilterAdvice {
   
   private @PersistenceContext EntityManager entityManager;
   private @Autowired ContextHolder<Context> contextHolder;
-  private @Autowired MarketRepository<Market> marketRepo;
+  private @Autowired MarketRegistry marketRegistry;
   
   /**
    * Enables context-specific filters for all repository methods.
@@ -37,7 +38,7 @@ public class ContextAwareFilterAdvice {
     }
     
     if (joinPoint.getTarget() instanceof MarketRepository) {
-      return; // would cause endless recursion
+      return; // markets are not market-specific
     }
     
     final Session session = entityManager.unwrap(Session.class);
@@ -54,12 +55,17 @@ public class ContextAwareFilterAdvice {
     }
       
     if (context.getMarket().isPresent()) {
-      String marketId = marketRepo.findBySlug(context.getMarket().get().getSlug())
-          .getPk().getId();
+      String marketId = getMarketId(context.getMarket().get().getSlug());
       session.enableFilter("market").setParameter("marketId", marketId);
     } else {
       session.disableFilter("market");
     }
   }
+  
+  private String getMarketId(String slug) {
+    return marketRegistry.get(slug)
+        .orElseThrow(() -> new IllegalStateException("Unknown market " + slug))
+        .getId();
+  }
 
 }
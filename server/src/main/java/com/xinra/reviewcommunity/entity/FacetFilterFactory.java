@@ -0,0 +1,39 @@
+package com.xinra.reviewcommunity.entity;
+
+import lombok.Setter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.hibernate.search.annotations.Factory;
+import org.hibernate.search.annotations.Key;
+import org.hibernate.search.filter.FilterKey;
+import org.hibernate.search.filter.StandardFilterKey;
+
+/**
+ * Restricts full-text queries to products with the given value of a field (drill-down). There is
+ * one filter definition per facet field on {@link Product}, named like the field. Usually the
+ * facet field itself is filtered, but categories are filtered by their ancestors. The matching
+ * documents are cached per field and value.
+ */
+public class FacetFilterFactory {
+  
+  public static final String FIELD = "field";
+  public static final String VALUE = "value";
+  
+  private @Setter String field;
+  private @Setter String value;
+  
+  @Key
+  public FilterKey getKey() {
+    StandardFilterKey key = new StandardFilterKey();
+    key.addParameter(field);
+    key.addParameter(value);
+    return key;
+  }
+  
+  @Factory
+  public Query getFilter() {
+    return new TermQuery(new Term(field, value));
+  }
+
+}
@@ -0,0 +1,35 @@
+package com.xinra.reviewcommunity.entity;
+
+import lombok.Setter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.hibernate.search.annotations.Factory;
+import org.hibernate.search.annotations.Key;
+import org.hibernate.search.filter.FilterKey;
+import org.hibernate.search.filter.StandardFilterKey;
+
+/**
+ * Restricts full-text queries to products of one market, like the Hibernate filter "market" (see
+ * {@link MarketSpecificEntity}) does for database queries. The matching documents are cached per
+ * market.
+ */
+public class MarketFilterFactory {
+  
+  public static final String NAME = "market";
+  
+  private @Setter String marketId;
+  
+  @Key
+  public FilterKey getKey() {
+    StandardFilterKey key = new StandardFilterKey();
+    key.addParameter(marketId);
+    return key;
+  }
+  
+  @Factory
+  public Query getFilter() {
+    return new TermQuery(new Term(Product.MARKET_ID_FIELD, marketId));
+  }
+
+}
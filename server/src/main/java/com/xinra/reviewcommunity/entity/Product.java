@@ -1,24 +1,58 @@
 package com.xinra.reviewcommunity.entity;
 
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.ManyToOne;
-
+import javax.persistence.PostPersist;
+import javax.persistence.PostUpdate;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import org.hibernate.search.annotations.Analyze;
+import org.hibernate.search.annotations.Facet;
 import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.FilterCacheModeType;
+import org.hibernate.search.annotations.FullTextFilterDef;
+import org.hibernate.search.annotations.FullTextFilterDefs;
 import org.hibernate.search.annotations.Index;
 import org.hibernate.search.annotations.Indexed;
 import org.hibernate.search.annotations.IndexedEmbedded;
+import org.hibernate.search.annotations.SortableField;
 import org.hibernate.search.annotations.Store;
 
 @Entity
 @Getter
 @Setter
-@Indexed
+@Indexed(interceptor = ProductIndexingInterceptor.class)
+@FullTextFilterDefs({
+    @FullTextFilterDef(name = MarketFilterFactory.NAME, impl = MarketFilterFactory.class,
+        cache = FilterCacheModeType.INSTANCE_AND_DOCIDSETRESULTS),
+    @FullTextFilterDef(name = Product.CATEGORY_FACET, impl = FacetFilterFactory.class,
+        cache = FilterCacheModeType.INSTANCE_AND_DOCIDSETRESULTS),
+    @FullTextFilterDef(name = Product.BRAND_FACET, impl = FacetFilterFactory.class,
+        cache = FilterCacheModeType.INSTANCE_AND_DOCIDSETRESULTS),
+    @FullTextFilterDef(name = Product.RATING_FACET, impl = FacetFilterFactory.class,
+        cache = FilterCacheModeType.INSTANCE_AND_DOCIDSETRESULTS)
+    })
 public class Product extends MarketSpecificEntity {
+  
+  public interface UpdateListener extends EntityUpdateListener<Product> {}
 
   public static final String REVIEW = "review";
+  
+  public static final String MARKET_ID_FIELD = "marketId";
+  
+  // facet fields, see SearchService
+  public static final String CATEGORY_FACET = "categoryFacet";
+  public static final String BRAND_FACET = "brandFacet";
+  public static final String RATING_FACET = "ratingFacet";
+  
+  public static final String CATEGORY_ANCESTORS_FIELD = "categoryAncestors";
 
   @Field(store = Store.YES)
   private String name;
@@ -34,15 +68,112 @@ public class Product extends MarketSpecificEntity {
   @IndexedEmbedded
   private Brand brand;
   
+  /**
+   * Time of the last change. Used to find products that have changed since the search index was
+   * last known to be up to date.
+   */
+  private ZonedDateTime updatedAt;
+  
+  /**
+   * Changes whenever the reviews of the product or their comments change (see
+   * {@link com.xinra.reviewcommunity.service.ProductVersions}). It is only changed by atomic
+   * updates, so updates of the entity must not overwrite it.
+   */
+  @Column(updatable = false)
+  private long contentVersion;
+  
   // cache
   
+  // Number of ratings per star. These are only changed by atomic updates, everything else below
+  // is derived from them.
+  
   @Field(index = Index.NO, store = Store.YES)
-  private double avgRating;
+  private int numOneStarRatings;
   
   @Field(index = Index.NO, store = Store.YES)
-  private int numRatings;
+  private int numTwoStarRatings;
+  
+  @Field(index = Index.NO, store = Store.YES)
+  private int numThreeStarRatings;
+  
+  @Field(index = Index.NO, store = Store.YES)
+  private int numFourStarRatings;
+  
+  @Field(index = Index.NO, store = Store.YES)
+  private int numFiveStarRatings;
   
   @Field(index = Index.NO, store = Store.YES)
+  private double avgRating;
+  
+  // sortable, see SearchService
+  
+  @SortableField
+  @Field(store = Store.YES)
+  private int numRatings;
+  
+  @SortableField
+  @Field(store = Store.YES)
   private double score;
+  
+  /**
+   * Indexed so that search results can be filtered by market (see {@link MarketFilterFactory}).
+   */
+  @Field(name = MARKET_ID_FIELD, analyze = Analyze.NO)
+  public String getMarketId() {
+    return market.getPk().getId();
+  }
+  
+  // Facet values are strings because discrete faceting isn't supported on numeric fields. They
+  // are also used to drill down (see FacetFilterFactory).
+  
+  @Field(name = CATEGORY_FACET, analyze = Analyze.NO)
+  @Facet(forField = CATEGORY_FACET)
+  public String getCategoryFacet() {
+    return Integer.toString(category.getSerial());
+  }
+  
+  /**
+   * Serials of the category and all its ancestors (multi-valued), so that drilling down to a
+   * category also finds the products of its descendants. Categories are cached, so walking up the
+   * hierarchy doesn't access the database.
+   */
+  @Field(name = CATEGORY_ANCESTORS_FIELD, analyze = Analyze.NO)
+  public List<String> getCategoryAncestors() {
+    final List<String> serials = new ArrayList<>();
+    for (Category ancestor = category; ancestor != null; ancestor = ancestor.getParent()) {
+      serials.add(Integer.toString(ancestor.getSerial()));
+    }
+    return serials;
+  }
+  
+  /**
+   * The brand serial or 0 for products without brand.
+   */
+  @Field(name = BRAND_FACET, analyze = Analyze.NO)
+  @Facet(forField = BRAND_FACET)
+  public String getBrandFacet() {
+    return Integer.toString(brand == null ? 0 : brand.getSerial());
+  }
+  
+  /**
+   * The average rating rounded down to full stars or 0 for products without ratings.
+   */
+  @Field(name = RATING_FACET, analyze = Analyze.NO)
+  @Facet(forField = RATING_FACET)
+  public String getRatingFacet() {
+    return Integer.toString((int) avgRating);
+  }
+  
+  @PrePersist
+  @PreUpdate
+  private void touch() {
+    updatedAt = ZonedDateTime.now();
+  }
+  
+  @PostUpdate
+  @PostPersist
+  private void onUpdate() {
+    EntityUpdateListener.delegateToBean(UpdateListener.class, this);
+  }
 
 }
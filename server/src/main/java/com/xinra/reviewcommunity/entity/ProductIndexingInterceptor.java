@@ -0,0 +1,33 @@
+package com.xinra.reviewcommunity.entity;
+
+import org.hibernate.search.indexes.interceptor.EntityIndexingInterceptor;
+import org.hibernate.search.indexes.interceptor.IndexingOverride;
+
+/**
+ * Disables automatic indexing of added and updated products. They are indexed asynchronously by
+ * the bean that implements {@link Product.UpdateListener} instead. Removal from the index is still
+ * done synchronously.
+ */
+public class ProductIndexingInterceptor implements EntityIndexingInterceptor<Product> {
+
+  @Override
+  public IndexingOverride onAdd(Product entity) {
+    return IndexingOverride.SKIP;
+  }
+
+  @Override
+  public IndexingOverride onUpdate(Product entity) {
+    return IndexingOverride.SKIP;
+  }
+
+  @Override
+  public IndexingOverride onDelete(Product entity) {
+    return IndexingOverride.APPLY_DEFAULT;
+  }
+
+  @Override
+  public IndexingOverride onCollectionUpdate(Product entity) {
+    return IndexingOverride.SKIP;
+  }
+
+}
@@ -4,9 +4,12 @@ import java.time.ZonedDateTime;
 import java.util.Set;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.PrePersist;
+import javax.persistence.Table;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -14,6 +17,11 @@ import lombok.Setter;
 @Entity
 @Getter
 @Setter
+@Table(indexes = {
+    // keyset pagination of reviews of a product (see ReviewRepository)
+    @Index(columnList = "product_id, createdAt, serial"),
+    @Index(columnList = "product_id, score, serial")
+})
 public class Review extends SerialEntity {
 
   private String title;
@@ -24,7 +32,7 @@ public class Review extends SerialEntity {
   @ManyToOne(optional = false)
   private @NonNull Product product;
   
-  @ManyToOne(optional = false)
+  @ManyToOne(optional = false, fetch = FetchType.LAZY)
   private @NonNull User user;
 
   @OneToMany(mappedBy = "review", cascade = CascadeType.REMOVE)
@@ -2,6 +2,7 @@ package com.xinra.reviewcommunity.entity;
 
 import java.time.ZonedDateTime;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.ManyToOne;
 import javax.persistence.PrePersist;
 import lombok.Getter;
@@ -16,10 +17,10 @@ public class ReviewComment extends SerialEntity {
   private @NonNull String text;
   private @NonNull ZonedDateTime createdAt;
   
-  @ManyToOne(optional = false)
+  @ManyToOne(optional = false, fetch = FetchType.LAZY)
   private @NonNull Review review;
   
-  @ManyToOne(optional = false)
+  @ManyToOne(optional = false, fetch = FetchType.LAZY)
   private @NonNull User user;
   
   @PrePersist
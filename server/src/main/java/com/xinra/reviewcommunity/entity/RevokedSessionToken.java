@@ -0,0 +1,22 @@
+package com.xinra.reviewcommunity.entity;
+
+import com.xinra.nucleus.entity.BaseEntity;
+import java.time.ZonedDateTime;
+import javax.persistence.Entity;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * A session token that has been revoked before it expires, e.g. by logging out. Can be deleted once
+ * the token has expired.
+ */
+@Entity
+@Getter
+@Setter
+public class RevokedSessionToken extends BaseEntity {
+
+  private @NonNull String tokenId;
+  private @NonNull ZonedDateTime expiresAt;
+
+}
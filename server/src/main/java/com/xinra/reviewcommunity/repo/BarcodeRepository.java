@@ -3,6 +3,11 @@ package com.xinra.reviewcommunity.repo;
 import com.xinra.nucleus.entity.AbstractEntityRepository;
 import com.xinra.reviewcommunity.entity.Barcode;
 import com.xinra.reviewcommunity.entity.Product;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -12,4 +17,26 @@ public interface BarcodeRepository<T extends Barcode> extends AbstractEntityRepo
   
   T findByProduct(Product product);
   
+  /**
+   * Returns those of the given codes that already exist.
+   */
+  @Query("SELECT b.code FROM Barcode b WHERE b.code IN (:codes)")
+  Set<String> findExistingCodes(@Param("codes") Collection<String> codes);
+  
+  /**
+   * Returns an array for each of the given codes that exists in the given market: [0] => code,
+   * [1] => product serial or {@code null} if the barcode is out of scope.
+   */
+  @Query("SELECT b.code, p.serial FROM Barcode b LEFT JOIN b.product p "
+      + "WHERE b.code IN (:codes) AND b.market.id = :marketId")
+  List<Object[]> findByMarketIdAndCodes(@Param("marketId") String marketId,
+      @Param("codes") Collection<String> codes);
+  
+  /**
+   * Returns an array for each barcode: [0] => market id, [1] => code, [2] => product serial or
+   * {@code null} if the barcode is out of scope.
+   */
+  @Query("SELECT b.market.id, b.code, p.serial FROM Barcode b LEFT JOIN b.product p")
+  List<Object[]> findAllForIndex();
+  
 }
@@ -2,6 +2,8 @@ package com.xinra.reviewcommunity.repo;
 
 import com.xinra.nucleus.entity.AbstractEntityRepository;
 import com.xinra.reviewcommunity.entity.Brand;
+import java.util.Collection;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -9,4 +11,10 @@ public interface BrandRepository<T extends Brand> extends AbstractEntityReposito
 
   T findBySerial(int serial);
   
+  /**
+   * Returns an array for each brand: [0] => serial, [1] => id.
+   */
+  @Query("SELECT b.serial, b.id FROM Brand b")
+  Collection<Object[]> findAllSerialsAndIds();
+  
 }
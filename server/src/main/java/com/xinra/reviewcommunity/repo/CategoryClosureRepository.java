@@ -0,0 +1,14 @@
+package com.xinra.reviewcommunity.repo;
+
+import com.xinra.nucleus.entity.AbstractEntityRepository;
+import com.xinra.reviewcommunity.entity.CategoryClosure;
+import java.util.List;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CategoryClosureRepository<T extends CategoryClosure>
+    extends AbstractEntityRepository<T> {
+
+  List<T> findByDescendantId(String descendantId);
+
+}
@@ -2,10 +2,8 @@ package com.xinra.reviewcommunity.repo;
 
 import com.xinra.nucleus.entity.AbstractEntityRepository;
 import com.xinra.reviewcommunity.entity.Category;
-import com.xinra.reviewcommunity.entity.Market;
 import java.util.Collection;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -14,12 +12,10 @@ public interface CategoryRepository<T extends Category> extends AbstractEntityRe
   @CacheQuery
   T findBySerial(int serial);
   
-  @CacheQuery
-  @Query("SELECT c, (SELECT COUNT(p) FROM c.products p WHERE p.market = :market) FROM Category c")
-  Collection<Object[]> findAllWithNumProducts(@Param("market") Market market);
-  
-  @CacheQuery
-  @Query("SELECT c.id FROM Category c WHERE c.parent.id = :parentId")
-  Collection<String> getIdsByParentId(@Param("parentId") String parentId);
+  /**
+   * Returns an array for each category: [0] => serial, [1] => id.
+   */
+  @Query("SELECT c.serial, c.id FROM Category c")
+  Collection<Object[]> findAllSerialsAndIds();
   
 }
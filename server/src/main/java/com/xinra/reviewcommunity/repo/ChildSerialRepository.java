@@ -2,9 +2,25 @@ package com.xinra.reviewcommunity.repo;
 
 import com.xinra.nucleus.entity.AbstractEntityRepository;
 import com.xinra.reviewcommunity.entity.ChildSerial;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ChildSerialRepository<T extends ChildSerial> extends AbstractEntityRepository<T> {
   
   T findByEntityIdAndName(String entityId, String name);
   
+  /**
+   * Increments the last serial in a single statement. The row stays locked until the transaction
+   * ends.
+   * @return the number of updated rows (0 if there is no such child serial yet)
+   */
+  @Modifying
+  @Query("UPDATE ChildSerial s SET s.lastSerial = s.lastSerial + 1 "
+      + "WHERE s.entityId = :entityId AND s.name = :name")
+  int increment(@Param("entityId") String entityId, @Param("name") String name);
+  
+  @Query("SELECT s.lastSerial FROM ChildSerial s WHERE s.entityId = :entityId AND s.name = :name")
+  int getLastSerial(@Param("entityId") String entityId, @Param("name") String name);
+  
 }
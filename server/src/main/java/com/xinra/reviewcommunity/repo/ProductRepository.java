@@ -2,8 +2,11 @@ package com.xinra.reviewcommunity.repo;
 
 import com.xinra.nucleus.entity.AbstractEntityRepository;
 import com.xinra.reviewcommunity.entity.Product;
+import java.time.ZonedDateTime;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -15,7 +18,72 @@ public interface ProductRepository<T extends Product> extends AbstractEntityRepo
 
   Set<T> findByBrandSerial(int serial);
 
-  @Query("SELECT p FROM Product p JOIN FETCH p.brand WHERE p.category.id IN (:categoryIds)")
-  Set<T> findByCategoryIds(@Param("categoryIds") Collection<String> categoryIds);
+  /**
+   * Returns all products in the given category, including products in transitive children.
+   */
+  @Query("SELECT p FROM Product p LEFT JOIN FETCH p.brand WHERE p.category.id IN "
+      + "(SELECT cc.descendant.id FROM CategoryClosure cc WHERE cc.ancestor.id = :categoryId)")
+  List<T> findByAncestorCategoryId(@Param("categoryId") String categoryId);
+  
+  @Query("SELECT p FROM Product p JOIN FETCH p.category LEFT JOIN FETCH p.brand "
+      + "WHERE p.id IN (:ids)")
+  List<T> findByIds(@Param("ids") Collection<String> ids);
+  
+  @Query("SELECT p FROM Product p JOIN FETCH p.category LEFT JOIN FETCH p.brand "
+      + "WHERE p.serial BETWEEN :first AND :last")
+  List<T> findBySerialRange(@Param("first") int first, @Param("last") int last);
+  
+  @Query("SELECT p.id FROM Product p WHERE p.updatedAt > :since")
+  List<String> findIdsUpdatedAfter(@Param("since") ZonedDateTime since);
+  
+  /**
+   * Returns an array for each category of each market that contains products: [0] => market id,
+   * [1] => category serial, [2] => number of products (not including children).
+   */
+  @Query("SELECT p.market.id, p.category.serial, COUNT(p) FROM Product p "
+      + "GROUP BY p.market.id, p.category.serial")
+  List<Object[]> countByMarketAndCategory();
+  
+  /**
+   * Returns an array for each product: [0] => market id, [1] => serial, [2] => name,
+   * [3] => brand name or {@code null}, [4] => score.
+   */
+  @Query("SELECT p.market.id, p.serial, p.name, b.name, p.score FROM Product p LEFT JOIN p.brand b")
+  List<Object[]> findAllForSuggestions();
+  
+  /**
+   * Returns the products whose rating counts don't add up to their number of ratings, e.g.
+   * because they were rated before the counts existed.
+   */
+  @Query("SELECT p FROM Product p WHERE p.numRatings <> p.numOneStarRatings "
+      + "+ p.numTwoStarRatings + p.numThreeStarRatings + p.numFourStarRatings "
+      + "+ p.numFiveStarRatings")
+  List<T> findWithIncompleteRatingCounts();
+  
+  /**
+   * Atomically adds to the rating counts of a product. {@code total} must be the sum of the
+   * per-star deltas. Derived values (average rating and score) are not updated.
+   */
+  @Modifying
+  @Query("UPDATE Product p SET "
+      + "p.numOneStarRatings = p.numOneStarRatings + :one, "
+      + "p.numTwoStarRatings = p.numTwoStarRatings + :two, "
+      + "p.numThreeStarRatings = p.numThreeStarRatings + :three, "
+      + "p.numFourStarRatings = p.numFourStarRatings + :four, "
+      + "p.numFiveStarRatings = p.numFiveStarRatings + :five, "
+      + "p.numRatings = p.numRatings + :total "
+      + "WHERE p.id = :id")
+  void addRatings(@Param("id") String id, @Param("one") int one, @Param("two") int two,
+      @Param("three") int three, @Param("four") int four, @Param("five") int five,
+      @Param("total") int total);
+  
+  @Query("SELECT p.contentVersion FROM Product p "
+      + "WHERE p.market.id = :marketId AND p.serial = :serial")
+  Long getContentVersion(@Param("marketId") String marketId, @Param("serial") int serial);
+  
+  @Modifying
+  @Query("UPDATE Product p SET p.contentVersion = p.contentVersion + 1 "
+      + "WHERE p.market.id = :marketId AND p.serial = :serial")
+  void incrementContentVersion(@Param("marketId") String marketId, @Param("serial") int serial);
 
 }
@@ -1,12 +1,20 @@
 package com.xinra.reviewcommunity.repo;
 
 import com.xinra.reviewcommunity.entity.ReviewComment;
-import java.util.Set;
+import java.util.List;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ReviewCommentRepository<T extends ReviewComment>
         extends com.xinra.nucleus.entity.AbstractEntityRepository<T> {
 
-  Set<T> findByReviewIdOrderByCreatedAtAsc(String reviewId);
+  /**
+   * Returns the comments of a review ordered by creation time. Each array contains:
+   * [0] => comment, [1] => name of the author, [2] => level of the author.
+   */
+  @Query("SELECT c, u.name, u.level FROM ReviewComment c JOIN c.user u "
+      + "WHERE c.review.id = :reviewId ORDER BY c.createdAt ASC")
+  List<Object[]> findByReviewIdWithAuthor(@Param("reviewId") String reviewId);
 
   T findBySerialAndReviewSerial(int serial, int reviewSerial);
   
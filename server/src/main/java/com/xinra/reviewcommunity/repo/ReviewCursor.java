@@ -0,0 +1,94 @@
+package com.xinra.reviewcommunity.repo;
+
+import com.xinra.reviewcommunity.entity.Review;
+import com.xinra.reviewcommunity.shared.OrderBy;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Position of a review in the list of reviews of a product, used for keyset pagination: The next
+ * page starts right after this position. Besides the value that is ordered by, the position
+ * contains the serial of the review because the value alone is not unique.
+ *
+ * <p>Clients only get the encoded form and must treat it as opaque.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class ReviewCursor {
+
+  public static class InvalidCursorException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private InvalidCursorException(String cursor) {
+      super("Invalid cursor '" + cursor + "'");
+    }
+  }
+
+  private static final String SEPARATOR = "|";
+
+  private final OrderBy orderBy;
+
+  /**
+   * Only set if ordered by {@link OrderBy#DATE}.
+   */
+  private final ZonedDateTime createdAt;
+
+  /**
+   * Only set if ordered by {@link OrderBy#RATING}.
+   */
+  private final double score;
+
+  private final int serial;
+
+  /**
+   * Returns the position of the given review.
+   */
+  public static ReviewCursor of(@NonNull Review review, @NonNull OrderBy orderBy) {
+    return orderBy == OrderBy.DATE
+        ? new ReviewCursor(orderBy, review.getCreatedAt(), 0, review.getSerial())
+        : new ReviewCursor(orderBy, null, review.getScore(), review.getSerial());
+  }
+
+  /**
+   * Decodes a cursor that has been created by {@link #encode()}.
+   * @throws InvalidCursorException if the cursor is malformed or has been created for another
+   *     order
+   */
+  public static ReviewCursor decode(@NonNull String cursor, @NonNull OrderBy orderBy) {
+    try {
+      final String[] parts = new String(Base64.getUrlDecoder().decode(cursor),
+          StandardCharsets.UTF_8).split("\\" + SEPARATOR);
+      if (parts.length != 3 || OrderBy.valueOf(parts[0]) != orderBy) {
+        throw new InvalidCursorException(cursor);
+      }
+      final int serial = Integer.parseInt(parts[2]);
+      return orderBy == OrderBy.DATE
+          ? new ReviewCursor(orderBy,
+              ZonedDateTime.ofInstant(Instant.parse(parts[1]), ZoneOffset.UTC), 0, serial)
+          : new ReviewCursor(orderBy, null, Double.parseDouble(parts[1]), serial);
+    } catch (IllegalArgumentException | DateTimeException ex) {
+      // also catches NumberFormatException
+      throw new InvalidCursorException(cursor);
+    }
+  }
+
+  /**
+   * Returns an URL-safe representation of this cursor.
+   */
+  public String encode() {
+    final String value = orderBy == OrderBy.DATE
+        ? createdAt.toInstant().toString() : Double.toString(score);
+    final String cursor = orderBy.name() + SEPARATOR + value + SEPARATOR + serial;
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
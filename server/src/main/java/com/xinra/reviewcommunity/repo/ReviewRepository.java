@@ -1,15 +1,97 @@
 package com.xinra.reviewcommunity.repo;
 
 import com.xinra.nucleus.entity.AbstractEntityRepository;
+import com.xinra.reviewcommunity.entity.Product;
 import com.xinra.reviewcommunity.entity.Review;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface ReviewRepository<T extends Review> extends AbstractEntityRepository<T>,
-    ReviewRepositoryCustom {
+public interface ReviewRepository<T extends Review> extends AbstractEntityRepository<T> {
 
   T findBySerialAndProductSerial(int serial, int productSerial);
 
   T findByUserIdAndProductId(String userId, String productId);
   
+  // Pages of reviews of a product (keyset pagination, see ReviewCursor). The serial makes the
+  // order deterministic. Only the first page of the pageable is used.
+  // Each array contains: [0] => review, [1] => name of the author, [2] => level of the author.
+  // Fetching the author's data in the same statement avoids loading the users one by one.
+  
+  @Query("SELECT r, u.name, u.level FROM Review r JOIN r.user u WHERE r.product = :product "
+      + "ORDER BY r.createdAt DESC, r.serial DESC")
+  List<Object[]> findPageByDate(@Param("product") Product product, Pageable pageable);
+  
+  @Query("SELECT r, u.name, u.level FROM Review r JOIN r.user u WHERE r.product = :product "
+      + "AND (r.createdAt < :createdAt OR (r.createdAt = :createdAt AND r.serial < :serial)) "
+      + "ORDER BY r.createdAt DESC, r.serial DESC")
+  List<Object[]> findPageByDateAfter(@Param("product") Product product,
+      @Param("createdAt") ZonedDateTime createdAt, @Param("serial") int serial,
+      Pageable pageable);
+  
+  @Query("SELECT r, u.name, u.level FROM Review r JOIN r.user u WHERE r.product = :product "
+      + "ORDER BY r.score DESC, r.serial DESC")
+  List<Object[]> findPageByScore(@Param("product") Product product, Pageable pageable);
+  
+  @Query("SELECT r, u.name, u.level FROM Review r JOIN r.user u WHERE r.product = :product "
+      + "AND (r.score < :score OR (r.score = :score AND r.serial < :serial)) "
+      + "ORDER BY r.score DESC, r.serial DESC")
+  List<Object[]> findPageByScoreAfter(@Param("product") Product product,
+      @Param("score") double score, @Param("serial") int serial, Pageable pageable);
+  
+  /**
+   * Returns an array for each number of stars the product was rated with: [0] => rating,
+   * [1] => number of reviews. Reviews without stars are not included.
+   */
+  @Query("SELECT r.rating, COUNT(r) FROM Review r WHERE r.product.id = :productId "
+      + "AND r.rating > 0 GROUP BY r.rating")
+  List<Object[]> countByRating(@Param("productId") String productId);
+  
+  /**
+   * Sets the vote counts of a review to the number of its votes in a single statement, which
+   * locks the row. Concurrent recounts are serialized, so the last one counts all committed votes.
+   * @return the number of updated rows (0 if the review doesn't exist)
+   */
+  @Modifying
+  @Query("UPDATE Review r SET "
+      + "r.numUpvotes = (SELECT COUNT(v) FROM ReviewVote v "
+      + "WHERE v.review.id = :id AND v.upvote = true), "
+      + "r.numDownvotes = (SELECT COUNT(v) FROM ReviewVote v "
+      + "WHERE v.review.id = :id AND v.upvote = false) "
+      + "WHERE r.id = :id")
+  int recountVotes(@Param("id") String id);
+  
+  /**
+   * Returns a single array: [0] => number of upvotes, [1] => number of downvotes.
+   */
+  @Query("SELECT r.numUpvotes, r.numDownvotes FROM Review r WHERE r.id = :id")
+  List<Object[]> getNumVotes(@Param("id") String id);
+  
+  @Modifying
+  @Query("UPDATE Review r SET r.score = :score WHERE r.id = :id")
+  void setScore(@Param("id") String id, @Param("score") double score);
+  
+  // Recounts the votes of a page of reviews ordered by ID. Only the first page of the pageable is
+  // used. Each array contains: [0] => id, [1] => number of upvotes, [2] => number of downvotes,
+  // [3] => counted upvotes, [4] => counted downvotes, [5] => market slug and [6] => serial of the
+  // product.
+  
+  @Query("SELECT r.id, r.numUpvotes, r.numDownvotes, "
+      + "(SELECT COUNT(v) FROM ReviewVote v WHERE v.review = r AND v.upvote = true), "
+      + "(SELECT COUNT(v) FROM ReviewVote v WHERE v.review = r AND v.upvote = false), "
+      + "m.slug, p.serial FROM Review r JOIN r.product p JOIN p.market m "
+      + "WHERE r.id > :id ORDER BY r.id")
+  List<Object[]> countVotesAfter(@Param("id") String id, Pageable pageable);
+  
+  @Modifying
+  @Query("UPDATE Review r SET r.numUpvotes = :upvotes, r.numDownvotes = :downvotes, "
+      + "r.score = :score WHERE r.id = :id")
+  void setVotes(@Param("id") String id, @Param("upvotes") int upvotes,
+      @Param("downvotes") int downvotes, @Param("score") double score);
+  
 }
@@ -1,45 +0,0 @@
-package com.xinra.reviewcommunity.repo;
-
-import com.xinra.nucleus.common.ContextHolder;
-import com.xinra.reviewcommunity.Context;
-import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
-import com.xinra.reviewcommunity.entity.Product;
-import com.xinra.reviewcommunity.shared.OrderBy;
-import java.util.List;
-import java.util.Optional;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
-import org.springframework.beans.factory.annotation.Autowired;
-
-public class ReviewRepositoryImpl implements ReviewRepositoryCustom {
-  
-  private @PersistenceContext EntityManager entityManager;
-  private @Autowired ContextHolder<Context> contextHolder;
-
-  @Override
-  public List<?> findByProduct(Product product, OrderBy orderBy) {
-    
-    final Optional<AuthenticatedUserDto> user = contextHolder.get().getAuthenticatedUser();
-    
-    String queryString = "SELECT r";
-    
-    if (user.isPresent()) {
-      queryString +=
-          ", (SELECT v FROM ReviewVote v WHERE v.review.id = r.id AND v.user.id = :userId)";
-    }
-    
-    queryString += " FROM Review r WHERE r.product = :product ORDER BY ";
-    queryString += orderBy == OrderBy.DATE ? "r.createdAt " : "r.score ";
-    queryString += "DESC";
-    
-    final Query query = entityManager.createQuery(queryString);
-    query.setParameter("product", product);
-    if (user.isPresent()) {
-      query.setParameter("userId", user.get().getPk().getId());
-    }
-    
-    return query.getResultList();
-  }
-
-}
@@ -2,6 +2,10 @@ package com.xinra.reviewcommunity.repo;
 
 import com.xinra.nucleus.entity.AbstractEntityRepository;
 import com.xinra.reviewcommunity.entity.ReviewVote;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -9,4 +13,8 @@ public interface ReviewVoteRepository<T extends ReviewVote> extends AbstractEnti
 
   T findByUserIdAndReviewId(String userId, String reviewId);
   
+  @Query("SELECT v FROM ReviewVote v WHERE v.user.id = :userId AND v.review.id IN (:reviewIds)")
+  List<T> findByUserIdAndReviewIds(@Param("userId") String userId,
+      @Param("reviewIds") Collection<String> reviewIds);
+  
 }
@@ -0,0 +1,23 @@
+package com.xinra.reviewcommunity.repo;
+
+import com.xinra.nucleus.entity.AbstractEntityRepository;
+import com.xinra.reviewcommunity.entity.RevokedSessionToken;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RevokedSessionTokenRepository<T extends RevokedSessionToken>
+    extends AbstractEntityRepository<T> {
+
+  @Query("SELECT t.tokenId FROM RevokedSessionToken t WHERE t.expiresAt > :now")
+  List<String> findUnexpiredTokenIds(@Param("now") ZonedDateTime now);
+
+  @Modifying
+  @Query("DELETE FROM RevokedSessionToken t WHERE t.expiresAt <= :now")
+  int deleteExpired(@Param("now") ZonedDateTime now);
+
+}
@@ -1,13 +1,55 @@
 package com.xinra.reviewcommunity.rest;
 
+import com.xinra.nucleus.common.ContextHolder;
 import com.xinra.nucleus.service.ServiceProvider;
+import com.xinra.reviewcommunity.Context;
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
+import com.xinra.reviewcommunity.service.ProductVersions;
 import com.xinra.reviewcommunity.shared.dto.DtoFactory;
 
+import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
 
 public class AbstractController {
   
   protected @Autowired DtoFactory dtoFactory;
   protected @Autowired ServiceProvider serviceProvider;
+  protected @Autowired ContextHolder<Context> contextHolder;
+  protected @Autowired ProductVersions productVersions;
+
+  /**
+   * Handles a conditional GET based on the version of the requested data. Returns {@code true} if
+   * the client's copy is current. In this case the status has been set to 304 and the handler
+   * should return {@code null} right away, so that the data is neither loaded nor serialized.
+   *
+   * <p>Anonymous responses may be stored by shared caches. Responses for authenticated users may
+   * contain data of the user (e.g. votes), so they are private and the ETag includes the user.
+   * Either way, caches must revalidate a stored response before using it.
+   */
+  protected boolean checkNotModified(ServletWebRequest request, Object version) {
+    final Optional<AuthenticatedUserDto> user = contextHolder.get().getAuthenticatedUser();
+    final CacheControl cacheControl = user.isPresent()
+        ? CacheControl.noCache().cachePrivate() : CacheControl.noCache().cachePublic();
+    request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+    
+    final String etag = user.isPresent()
+        ? version + "-" + user.get().getPk().getId() : String.valueOf(version);
+    return request.checkNotModified(etag);
+  }
+  
+  /**
+   * Returns the version of a product of the current market, which also covers its reviews.
+   * @throws com.xinra.reviewcommunity.service.SerialNotFoundException if the product doesn't exist
+   */
+  protected String getProductVersion(int productSerial) {
+    return productVersions.get(getMarketSlug(), productSerial);
+  }
+  
+  protected String getMarketSlug() {
+    return contextHolder.get().getMarket().get().getSlug();
+  }
 
 }
@@ -2,6 +2,7 @@ package com.xinra.reviewcommunity.rest;
 
 import com.xinra.reviewcommunity.auth.AccessRequires;
 import com.xinra.reviewcommunity.service.CategoryService;
+import com.xinra.reviewcommunity.service.CategoryTree;
 import com.xinra.reviewcommunity.shared.Permission;
 import com.xinra.reviewcommunity.shared.dto.CategoryDto;
 import com.xinra.reviewcommunity.shared.dto.CreateCategoryDto;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @RestController
 @RequestMapping("/category")
@@ -30,7 +32,12 @@ public class CategoryController extends AbstractController {
    * GET a list of all categories.
    */
   @RequestMapping(path = "", method = RequestMethod.GET)
-  public Collection<CategoryDto> getList() {
-    return serviceProvider.getService(CategoryService.class).getCategoryTree();
+  public Collection<CategoryDto> getList(ServletWebRequest request) {
+    CategoryTree.Snapshot categoryTree
+        = serviceProvider.getService(CategoryService.class).getCategoryTree();
+    if (checkNotModified(request, categoryTree.getVersion())) {
+      return null;
+    }
+    return categoryTree.getRootCategories();
   }
 }
@@ -1,10 +1,13 @@
 package com.xinra.reviewcommunity.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xinra.nucleus.common.ApplicationContextProvider;
 import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
 import com.xinra.reviewcommunity.shared.dto.DtoFactory;
 import com.xinra.reviewcommunity.shared.dto.UserDto;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
 
 public class FrontendUtil {
   
@@ -18,6 +21,18 @@ public class FrontendUtil {
     return RequestContextHolder.getRequestAttributes() != null;
   }
   
+  /**
+   * Returns the object mapper that is used to write response bodies. Use it to serialize responses
+   * in advance, so that they are identical to responses that are written by Spring MVC.
+   */
+  public static ObjectMapper getResponseObjectMapper(RequestMappingHandlerAdapter handlerAdapter) {
+    return handlerAdapter.getMessageConverters().stream()
+        .filter(converter -> converter instanceof MappingJackson2HttpMessageConverter)
+        .map(converter -> ((MappingJackson2HttpMessageConverter) converter).getObjectMapper())
+        .findFirst()
+        .orElseThrow(() -> new IllegalStateException("There is no JSON message converter"));
+  }
+  
   /**
    * Creates a {@link UserDto} from an {@link AuthenticatedUserDto}. This is necessary if the
    * authenticated user should be returned by a REST endpoint. Even if the declared type is
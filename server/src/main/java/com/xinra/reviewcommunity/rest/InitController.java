@@ -1,30 +1,48 @@
 package com.xinra.reviewcommunity.rest;
 
-import com.xinra.nucleus.common.ContextHolder;
-import com.xinra.reviewcommunity.Context;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
 import com.xinra.reviewcommunity.shared.dto.InitDto;
 import com.xinra.reviewcommunity.shared.dto.UserDto;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
 
 @RestController
 public class InitController extends AbstractController {
   
-  private @Autowired ContextHolder<Context> contextHolder;
   private @Autowired AuthController authController;
-  private @Autowired MarketController marketController;
-  private @Autowired CategoryController categoryController;
+  private @Autowired InitSectionCache initSectionCache;
+  private @Autowired RequestMappingHandlerAdapter handlerAdapter;
+  private ObjectMapper objectMapper;
+  
+  @PostConstruct
+  private void initObjectMapper() {
+    objectMapper = FrontendUtil.getResponseObjectMapper(handlerAdapter);
+  }
 
   /**
-   * GET information required to initialize the client.
+   * GET information required to initialize the client ({@link InitDto}). The markets and the
+   * category tree are taken from the {@link InitSectionCache}, only the user-specific parts are
+   * serialized per request.
    */
-  @RequestMapping(path = "/init", method = RequestMethod.GET)
-  public InitDto init(HttpServletRequest request) {
+  @RequestMapping(path = "/init", method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+  public byte[] init(HttpServletRequest request) throws IOException {
+    // prepared while the user-specific parts are built
+    CompletableFuture<byte[]> sharedSections
+        = initSectionCache.get(contextHolder.get().getMarket().get().getSlug());
+    
     InitDto initDto = dtoFactory.createDto(InitDto.class);
     
     UserDto authenticatedUser = contextHolder.get().getAuthenticatedUser()
@@ -34,10 +52,24 @@ public class InitController extends AbstractController {
     initDto.setAuthenticatedUser(authenticatedUser);
     initDto.setPermissions(contextHolder.get().getAuthenticatedUser()
         .map(AuthenticatedUserDto::getPermissions).orElse(Collections.emptySet()));
-    initDto.setMarkets(marketController.getList());
-    initDto.setCategoryTree(categoryController.getList());
     
-    return initDto;
+    ObjectNode userSections = objectMapper.valueToTree(initDto);
+    userSections.remove("markets");
+    userSections.remove("categoryTree");
+    byte[] userJson = objectMapper.writeValueAsBytes(userSections);
+    byte[] sharedJson = sharedSections.join();
+    
+    // {<shared sections>,<members of the user-specific object>}
+    ByteArrayOutputStream json = new ByteArrayOutputStream(sharedJson.length + userJson.length + 1);
+    json.write('{');
+    json.write(sharedJson);
+    if (userSections.size() > 0) {
+      json.write(',');
+      json.write(userJson, 1, userJson.length - 1);
+    } else {
+      json.write('}');
+    }
+    return json.toByteArray();
   }
   
 }
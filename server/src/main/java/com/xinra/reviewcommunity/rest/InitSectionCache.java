@@ -0,0 +1,123 @@
+package com.xinra.reviewcommunity.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xinra.reviewcommunity.rest.conf.FrontendConfiguration;
+import com.xinra.reviewcommunity.service.CategoryTree;
+import com.xinra.reviewcommunity.service.MarketRegistry;
+import com.xinra.reviewcommunity.shared.dto.InitDto;
+import com.xinra.reviewcommunity.shared.dto.MarketDto;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Caches the parts of the {@link InitDto} that are the same for all users of a market (markets and
+ * category tree) as serialized JSON. An entry is valid as long as the versions of the
+ * {@link MarketRegistry} and the market's {@link CategoryTree} don't change.
+ *
+ * <p>If an entry is missing or outdated, it is built asynchronously, so the caller can prepare the
+ * user-specific parts in the meantime. Concurrent requests for the same market wait for the same
+ * build instead of starting their own, which keeps app launch spikes cheap.
+ */
+@Slf4j
+@Component
+public class InitSectionCache {
+
+  @RequiredArgsConstructor
+  private static class Entry {
+    private final long marketsVersion;
+    private final long categoryTreeVersion;
+    private final CompletableFuture<byte[]> json;
+
+    private boolean isCurrent(long marketsVersion, long categoryTreeVersion) {
+      return this.marketsVersion == marketsVersion
+          && this.categoryTreeVersion == categoryTreeVersion
+          && !json.isCompletedExceptionally();
+    }
+  }
+
+  private static final byte[] MARKETS_FIELD = "\"markets\":".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] CATEGORY_TREE_FIELD
+      = ",\"categoryTree\":".getBytes(StandardCharsets.UTF_8);
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired CategoryTree categoryTree;
+  private @Autowired RequestMappingHandlerAdapter handlerAdapter;
+  private @Autowired @Qualifier(FrontendConfiguration.INIT_SECTION_EXECUTOR) Executor executor;
+  private ObjectMapper objectMapper;
+
+  @PostConstruct
+  private void init() {
+    objectMapper = FrontendUtil.getResponseObjectMapper(handlerAdapter);
+  }
+
+  /**
+   * Returns the markets and the category tree of the given market as JSON object members, i.e.
+   * {@code "markets":[...],"categoryTree":[...]}. The returned future must not be modified.
+   */
+  public CompletableFuture<byte[]> get(@NonNull String marketSlug) {
+    // snapshots hold their data together with its version, so an entry always matches its versions
+    final MarketRegistry.Snapshot markets = marketRegistry.getSnapshot();
+    final String marketId = markets.get(marketSlug)
+        .orElseThrow(() -> new IllegalStateException("Unknown market " + marketSlug))
+        .getId();
+    final CategoryTree.Snapshot tree = categoryTree.get(marketId);
+
+    final long marketsVersion = markets.getVersion();
+    return entries.compute(marketSlug, (slug, entry) ->
+        entry != null && entry.isCurrent(marketsVersion, tree.getVersion())
+            ? entry : new Entry(marketsVersion, tree.getVersion(), build(slug, markets, tree)))
+        .json;
+  }
+
+  private CompletableFuture<byte[]> build(String marketSlug, MarketRegistry.Snapshot markets,
+      CategoryTree.Snapshot tree) {
+    log.debug("Building init sections of market {}", marketSlug);
+
+    // serialized independently of each other
+    final CompletableFuture<byte[]> marketsJson = CompletableFuture.supplyAsync(() -> {
+      List<MarketDto> marketDtos = markets.getAll().stream()
+          .map(marketRegistry::toDto)
+          .collect(Collectors.toList());
+      return serialize(marketDtos);
+    }, executor);
+    final CompletableFuture<byte[]> categories
+        = CompletableFuture.supplyAsync(() -> serialize(tree.getRootCategories()), executor);
+
+    return marketsJson.thenCombine(categories, (marketsBytes, categoriesBytes) -> {
+      ByteArrayOutputStream json = new ByteArrayOutputStream(MARKETS_FIELD.length
+          + marketsBytes.length + CATEGORY_TREE_FIELD.length + categoriesBytes.length);
+      json.write(MARKETS_FIELD, 0, MARKETS_FIELD.length);
+      json.write(marketsBytes, 0, marketsBytes.length);
+      json.write(CATEGORY_TREE_FIELD, 0, CATEGORY_TREE_FIELD.length);
+      json.write(categoriesBytes, 0, categoriesBytes.length);
+      return json.toByteArray();
+    });
+  }
+
+  private byte[] serialize(Object value) {
+    try {
+      return objectMapper.writeValueAsBytes(value);
+    } catch (JsonProcessingException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+}
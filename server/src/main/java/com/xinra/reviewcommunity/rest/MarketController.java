@@ -1,12 +1,14 @@
 package com.xinra.reviewcommunity.rest;
 
 import com.xinra.reviewcommunity.rest.conf.MarketAgnostic;
+import com.xinra.reviewcommunity.service.MarketRegistry;
 import com.xinra.reviewcommunity.service.MarketService;
 import com.xinra.reviewcommunity.shared.dto.MarketDto;
 import java.util.Collection;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @RestController
 @MarketAgnostic
@@ -17,8 +19,14 @@ public class MarketController extends AbstractController {
    * GET all markets.
    */
   @RequestMapping(path = "", method = RequestMethod.GET)
-  public Collection<MarketDto> getList() {
-    return serviceProvider.getService(MarketService.class).getAllMarkets();
+  public Collection<MarketDto> getList(ServletWebRequest request) {
+    MarketService marketService = serviceProvider.getService(MarketService.class);
+    // the version and the markets of the response are taken from the same snapshot
+    MarketRegistry.Snapshot markets = marketService.getMarkets();
+    if (checkNotModified(request, markets.getVersion())) {
+      return null;
+    }
+    return marketService.getAllMarkets(markets);
   }
 
 }
@@ -3,14 +3,25 @@ package com.xinra.reviewcommunity.rest;
 import com.xinra.reviewcommunity.auth.AccessRequires;
 import com.xinra.reviewcommunity.service.BarcodeService;
 import com.xinra.reviewcommunity.service.BarcodeService.BarcodeAlreadyExistsException;
+import com.xinra.reviewcommunity.service.ProductImportService;
 import com.xinra.reviewcommunity.service.ProductService;
 import com.xinra.reviewcommunity.service.SearchService;
 import com.xinra.reviewcommunity.shared.Permission;
+import com.xinra.reviewcommunity.shared.ProductSearchOrder;
+import com.xinra.reviewcommunity.shared.dto.BarcodeResolutionDto;
 import com.xinra.reviewcommunity.shared.dto.CreateProductDto;
 import com.xinra.reviewcommunity.shared.dto.ProductDto;
+import com.xinra.reviewcommunity.shared.dto.ProductImportReportDto;
+import com.xinra.reviewcommunity.shared.dto.ProductSearchResultDto;
+import com.xinra.reviewcommunity.shared.dto.ProductSuggestionDto;
 import com.xinra.reviewcommunity.shared.dto.SerialDto;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.BindException;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,11 +30,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @RestController
 @RequestMapping("/product")
 public class ProductController extends AbstractController {
 
+  private static final int MAX_LIMIT = 100;
+
+  private @Autowired ResponseCache responseCache;
 
   /**
    * Create a new product.
@@ -44,26 +59,62 @@ public class ProductController extends AbstractController {
     }
   }
 
+  /**
+   * Import products from newline delimited JSON (one {@link CreateProductDto} per line).
+   */
+  @AccessRequires(Permission.IMPORT_PRODUCTS)
+  @RequestMapping(path = "/import", method = RequestMethod.POST, consumes = "application/x-ndjson")
+  public ProductImportReportDto importProducts(Reader body) throws IOException {
+    return serviceProvider.getService(ProductImportService.class)
+        .importProducts(new BufferedReader(body));
+  }
+
   /**
    * GET a product by its Serial.
    */
   @RequestMapping(path = "/{serial}", method = RequestMethod.GET)
-  public ProductDto get(@PathVariable int serial) {
-    return serviceProvider.getService(ProductService.class).getProductBySerial(serial);
+  public void get(@PathVariable int serial, ServletWebRequest request,
+      HttpServletResponse response) throws IOException {
+    String version = getProductVersion(serial);
+    if (checkNotModified(request, version)) {
+      return;
+    }
+    // the same for all users
+    String key = "product/" + getMarketSlug() + "/" + serial + "/" + version;
+    responseCache.write(response, key,
+        () -> serviceProvider.getService(ProductService.class).getProductBySerial(serial));
   }
   
   /**
-   * GET a list of products using full text search.
+   * GET a page of products using full text search along with the facets of all matching products.
+   * The optional parameters category, brand and stars drill down to a facet value.
    */
   @RequestMapping(path = "", params = "q", method = RequestMethod.GET)
-  public List<ProductDto> getList(@RequestParam(name = "q") String query) {
-    return serviceProvider.getService(SearchService.class).searchProducts(query);
+  public ProductSearchResultDto getList(@RequestParam(name = "q") String query,
+      @RequestParam(defaultValue = "RELEVANCE") ProductSearchOrder orderBy,
+      @RequestParam(required = false) Integer category,
+      @RequestParam(required = false) Integer brand,
+      @RequestParam(required = false) Integer stars,
+      @RequestParam(defaultValue = "0") int offset,
+      @RequestParam(defaultValue = "20") int limit) {
+    return serviceProvider.getService(SearchService.class).searchProducts(query, orderBy,
+        category, brand, stars, Math.max(0, offset), Math.max(1, Math.min(limit, MAX_LIMIT)));
+  }
+  
+  /**
+   * GET the names of the best products that match a prefix, e.g. to complete a search query.
+   */
+  @RequestMapping(path = "/suggest", params = "prefix", method = RequestMethod.GET)
+  public List<ProductSuggestionDto> suggest(@RequestParam String prefix,
+      @RequestParam(defaultValue = "10") int limit) {
+    return serviceProvider.getService(SearchService.class).suggestProducts(prefix,
+        Math.max(1, Math.min(limit, MAX_LIMIT)));
   }
   
   /**
    * GET a list of products in the given category.
    */
-  @RequestMapping(path = "", params = "category", method = RequestMethod.GET)
+  @RequestMapping(path = "", params = {"category", "!q"}, method = RequestMethod.GET)
   public List<ProductDto> getByCategory(@RequestParam(name = "category") int categorySerial) {
     return serviceProvider.getService(ProductService.class).getProductsByCategory(categorySerial);
   }
@@ -75,4 +126,13 @@ public class ProductController extends AbstractController {
   public int getByBarcode(@RequestParam String barcode) {
     return serviceProvider.getService(BarcodeService.class).getProductSerial(barcode);
   }
+
+  /**
+   * Resolve a batch of barcodes (a JSON array of at most {@link BarcodeService#MAX_BATCH_SIZE}
+   * codes), e.g. of a whole shelf. Returns the status of each code in the given order.
+   */
+  @RequestMapping(path = "/serial/batch", method = RequestMethod.POST)
+  public List<BarcodeResolutionDto> getByBarcodes(@RequestBody List<String> barcodes) {
+    return serviceProvider.getService(BarcodeService.class).resolveBarcodes(barcodes);
+  }
 }
@@ -0,0 +1,86 @@
+package com.xinra.reviewcommunity.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.xinra.reviewcommunity.service.ProductVersions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Caches serialized JSON responses. Keys must contain everything the response depends on,
+ * including a version of the data (see {@link ProductVersions}), so entries never need to be
+ * invalidated: Outdated entries are not requested anymore and are evicted eventually. The cache is
+ * bounded by the total size of the responses and evicts the least recently used ones.
+ */
+@Component
+public class ResponseCache implements PublicMetrics {
+
+  private @Autowired RequestMappingHandlerAdapter handlerAdapter;
+  private @Value("${reviewcommunity.response-cache.max-bytes:67108864}") long maxBytes;
+  private ObjectMapper objectMapper;
+  private Cache<String, byte[]> responses;
+
+  @PostConstruct
+  private void init() {
+    objectMapper = FrontendUtil.getResponseObjectMapper(handlerAdapter);
+    responses = CacheBuilder.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((String key, byte[] json) -> key.length() + json.length)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Writes the cached response with the given key. If there is none, the body is loaded,
+   * serialized and cached first.
+   * @param key identifies the response or {@code null} if it must not be cached, e.g. because it
+   *     contains data of the authenticated user
+   */
+  public void write(@NonNull HttpServletResponse response, String key,
+      @NonNull Supplier<?> loader) throws IOException {
+
+    byte[] json = key == null ? null : responses.getIfPresent(key);
+    if (json == null) {
+      // exceptions of the loader are passed through to the exception handlers
+      json = objectMapper.writeValueAsBytes(loader.get());
+      if (key != null) {
+        responses.put(key, json);
+      }
+    }
+
+    response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    response.setContentLength(json.length);
+    response.getOutputStream().write(json);
+  }
+
+  public CacheStats stats() {
+    return responses.stats();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    final CacheStats stats = stats();
+    final Collection<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>("cache.responses.size", responses.size()));
+    metrics.add(new Metric<>("cache.responses.hits", stats.hitCount()));
+    metrics.add(new Metric<>("cache.responses.misses", stats.missCount()));
+    metrics.add(new Metric<>("cache.responses.evictions", stats.evictionCount()));
+    metrics.add(new Metric<>("cache.responses.hit-ratio", stats.hitRate()));
+    return metrics;
+  }
+
+}
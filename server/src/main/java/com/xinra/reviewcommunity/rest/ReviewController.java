@@ -7,21 +7,27 @@ import com.xinra.reviewcommunity.shared.Permission;
 import com.xinra.reviewcommunity.shared.dto.CreateReviewCommentDto;
 import com.xinra.reviewcommunity.shared.dto.CreateReviewDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewCommentDto;
-import com.xinra.reviewcommunity.shared.dto.ReviewDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewVoteDto;
+import java.io.IOException;
 import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @RestController
 @RequestMapping("/product/{serial}/review")
 public class ReviewController extends AbstractController {
-
+  
+  private static final int MAX_LIMIT = 100;
+  
+  private @Autowired ResponseCache responseCache;
 
   /**
    * Create a new review.
@@ -34,12 +40,27 @@ public class ReviewController extends AbstractController {
   }
 
   /**
-   * GET a list of all reviews for a specific product.
+   * GET a page of reviews for a specific product.
    */
   @RequestMapping(path = "", method = RequestMethod.GET)
-  public List<ReviewDto> getAllReviews(@PathVariable int serial, 
-      @RequestParam(defaultValue = "DATE") OrderBy orderBy) {
-    return serviceProvider.getService(ReviewService.class).getReviewsForProduct(serial, orderBy);
+  public void getReviews(@PathVariable int serial, 
+      @RequestParam(defaultValue = "DATE") OrderBy orderBy,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "20") int limit,
+      ServletWebRequest request, HttpServletResponse response) throws IOException {
+    
+    // the parameters are part of the URL, so the version of the product suffices
+    String version = getProductVersion(serial);
+    if (checkNotModified(request, version)) {
+      return;
+    }
+    int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+    // pages for authenticated users contain their votes
+    String key = contextHolder.get().getAuthenticatedUser().isPresent() ? null
+        : "reviews/" + getMarketSlug() + "/" + serial + "/" + version + "/" + orderBy + "/"
+            + pageSize + "/" + cursor;
+    responseCache.write(response, key, () -> serviceProvider.getService(ReviewService.class)
+        .getReviewsForProduct(serial, orderBy, cursor, pageSize));
   }
 
   /**
@@ -69,8 +90,11 @@ public class ReviewController extends AbstractController {
    */
   @RequestMapping(path = "/{reviewSerial}/comment", method = RequestMethod.GET)
   public List<ReviewCommentDto> getAllReviewComments(@PathVariable int reviewSerial,
-      @PathVariable int serial) {
+      @PathVariable int serial, ServletWebRequest request) {
     
+    if (checkNotModified(request, getProductVersion(serial))) {
+      return null;
+    }
     return serviceProvider.getService(ReviewService.class)
         .getAllReviewComments(reviewSerial, serial);
   }
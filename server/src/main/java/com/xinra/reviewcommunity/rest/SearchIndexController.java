@@ -0,0 +1,34 @@
+package com.xinra.reviewcommunity.rest;
+
+import com.xinra.reviewcommunity.auth.AccessRequires;
+import com.xinra.reviewcommunity.service.SearchService;
+import com.xinra.reviewcommunity.shared.Permission;
+import com.xinra.reviewcommunity.shared.dto.SearchIndexStatusDto;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/search-index")
+public class SearchIndexController extends AbstractController {
+
+  /**
+   * GET the state of the search index and the progress of the current rebuild.
+   */
+  @AccessRequires(Permission.MANAGE_SEARCH_INDEX)
+  @RequestMapping(path = "", method = RequestMethod.GET)
+  public SearchIndexStatusDto getStatus() {
+    return serviceProvider.getService(SearchService.class).getIndexStatus();
+  }
+
+  /**
+   * Start rebuilding the search index in the background.
+   */
+  @AccessRequires(Permission.MANAGE_SEARCH_INDEX)
+  @RequestMapping(path = "/rebuild", method = RequestMethod.POST)
+  public SearchIndexStatusDto rebuild() {
+    SearchService searchService = serviceProvider.getService(SearchService.class);
+    searchService.rebuildIndex();
+    return searchService.getIndexStatus();
+  }
+}
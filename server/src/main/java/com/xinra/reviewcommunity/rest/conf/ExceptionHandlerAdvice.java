@@ -1,8 +1,12 @@
 package com.xinra.reviewcommunity.rest.conf;
 
+import com.xinra.reviewcommunity.repo.ReviewCursor.InvalidCursorException;
 import com.xinra.reviewcommunity.service.BarcodeService.BarcodeNotFoundException;
+import com.xinra.reviewcommunity.service.BarcodeService.InvalidBarcodeException;
 import com.xinra.reviewcommunity.service.BarcodeService.ProductOutOfScopeException;
+import com.xinra.reviewcommunity.service.BarcodeService.TooManyBarcodesException;
 import com.xinra.reviewcommunity.service.MarketService.MarketNotFoundException;
+import com.xinra.reviewcommunity.service.PasswordHasher.PasswordHasherBusyException;
 import com.xinra.reviewcommunity.service.SerialNotFoundException;
 import java.io.IOException;
 import javax.servlet.http.HttpServletResponse;
@@ -25,5 +29,21 @@ public class ExceptionHandlerAdvice {
       throws IOException {
     response.sendError(HttpServletResponse.SC_NOT_FOUND, ex.getMessage());
   }
+  
+  @ExceptionHandler({
+      InvalidCursorException.class,
+      TooManyBarcodesException.class,
+      InvalidBarcodeException.class
+  })
+  public void handleBadRequestException(Exception ex, HttpServletResponse response)
+      throws IOException {
+    response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+  }
+  
+  @ExceptionHandler(PasswordHasherBusyException.class)
+  public void handleServiceUnavailableException(Exception ex, HttpServletResponse response)
+      throws IOException {
+    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ex.getMessage());
+  }
 
 }
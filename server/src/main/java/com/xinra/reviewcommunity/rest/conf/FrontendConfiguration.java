@@ -1,7 +1,10 @@
 package com.xinra.reviewcommunity.rest.conf;
 
+import com.xinra.reviewcommunity.rest.InitSectionCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurationSupport;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
@@ -9,6 +12,8 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 @Configuration
 public class FrontendConfiguration extends WebMvcConfigurationSupport {
   
+  public static final String INIT_SECTION_EXECUTOR = "initSectionExecutor";
+  
   @Autowired
   private ContextConfiguringInterceptor requestContextInterceptor;
 
@@ -22,4 +27,18 @@ public class FrontendConfiguration extends WebMvcConfigurationSupport {
     return new PrefixingRequestMappingHandlerMapping();
   }
   
+  /**
+   * Serializes the sections of the init response in the background (see
+   * {@link InitSectionCache}). Builds are shared by concurrent requests of a market, so two
+   * threads (one per section) are enough.
+   */
+  @Bean(name = INIT_SECTION_EXECUTOR)
+  public ThreadPoolTaskExecutor initSectionExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(2);
+    executor.setMaxPoolSize(2);
+    executor.setThreadNamePrefix("init-section-");
+    return executor;
+  }
+  
 }
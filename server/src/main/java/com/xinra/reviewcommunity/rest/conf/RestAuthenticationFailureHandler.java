@@ -1,5 +1,6 @@
 package com.xinra.reviewcommunity.rest.conf;
 
+import com.xinra.reviewcommunity.service.PasswordHasher.PasswordHasherBusyException;
 import java.io.IOException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -11,7 +12,8 @@ import org.springframework.stereotype.Component;
 /**
  * By default, Spring will redirect a failed authentication request to the login URL. For a REST API
  * this is no proper behavior. Instead, this implementation returns a {@code 401 Unauthorized}
- * response.
+ * response, or {@code 503 Service Unavailable} if the password couldn't be checked because too
+ * many logins are in progress.
  */
 @Component
 public class RestAuthenticationFailureHandler extends SimpleUrlAuthenticationFailureHandler {
@@ -20,6 +22,10 @@ public class RestAuthenticationFailureHandler extends SimpleUrlAuthenticationFai
   public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
       AuthenticationException exception) throws IOException, ServletException {
     
+    if (exception instanceof PasswordHasherBusyException) {
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, exception.getMessage());
+      return;
+    }
     response.sendError(HttpServletResponse.SC_UNAUTHORIZED, exception.getMessage());
   }
 }
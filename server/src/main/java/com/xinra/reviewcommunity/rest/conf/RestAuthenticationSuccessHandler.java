@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
 import com.xinra.reviewcommunity.rest.AuthController;
 import com.xinra.reviewcommunity.rest.FrontendUtil;
+import com.xinra.reviewcommunity.service.SessionTokens;
 import com.xinra.reviewcommunity.shared.dto.DtoFactory;
 import com.xinra.reviewcommunity.shared.dto.SuccessfulAuthenticationDto;
 import com.xinra.reviewcommunity.shared.dto.UserDto;
@@ -22,7 +23,7 @@ import org.springframework.stereotype.Component;
 /**
  * By default, Spring redirects successful authentication requests to another URL. For a REST API
  * this is no proper behavior. Instead, this implementation returns a {@code 200 OK} response along
- * with information about the authenticated user.
+ * with information about the authenticated user and, if enabled, a session token.
  */
 @Slf4j
 @Component
@@ -31,6 +32,7 @@ public class RestAuthenticationSuccessHandler
 
   private @Autowired DtoFactory dtoFactory;
   private @Autowired AuthController authController;
+  private @Autowired SessionTokens sessionTokens;
   private final ObjectMapper mapper;
   
   @Autowired
@@ -52,6 +54,9 @@ public class RestAuthenticationSuccessHandler
     authDto.setUser(userDto);
     authDto.setPermissions(user.getPermissions());
     authDto.setCsrfToken(authController.getCsrfToken(request));
+    if (sessionTokens.isEnabled()) {
+      authDto.setSessionToken(sessionTokens.issue(user));
+    }
     
     log.info("User with name '{}' authenticated", user.getName());
     
@@ -3,6 +3,8 @@ package com.xinra.reviewcommunity.rest.conf;
 import com.xinra.reviewcommunity.entity.PasswordLogin;
 import com.xinra.reviewcommunity.repo.PasswordLoginRepository;
 import com.xinra.reviewcommunity.service.AuthenticationProviderImpl;
+import com.xinra.reviewcommunity.service.PasswordHasher;
+import com.xinra.reviewcommunity.service.SessionTokens;
 import com.xinra.reviewcommunity.shared.dto.DtoFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,7 +13,14 @@ import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.csrf.CsrfFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @Configuration
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
@@ -22,10 +31,13 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
   private @Autowired RestLogoutSuccessHandler logoutSuccessHandler;
   private @Autowired DtoFactory dtoFactory;
   private @Autowired PasswordLoginRepository<PasswordLogin> passwordLoginRepo;
+  private @Autowired PasswordHasher passwordHasher;
+  private @Autowired SessionTokens sessionTokens;
   
   @Override
   protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-    auth.authenticationProvider(new AuthenticationProviderImpl(dtoFactory, passwordLoginRepo));
+    auth.authenticationProvider(new AuthenticationProviderImpl(dtoFactory, passwordLoginRepo,
+        passwordHasher));
   }
   
   @Override
@@ -46,6 +58,35 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
         .exceptionHandling()
         .authenticationEntryPoint(authenticationEntryPoint);
     
+    if (sessionTokens.isEnabled()) {
+      configureSessionTokens(http);
+    }
+  }
+  
+  /**
+   * Replaces the servlet session with session tokens (see {@link SessionTokens}), so that any
+   * instance can serve any request. The CSRF token is kept in a cookie instead of the session.
+   * Requests that are authenticated with a token don't need one, because browsers don't add the
+   * {@code Authorization} header on their own.
+   */
+  private void configureSessionTokens(HttpSecurity http) throws Exception {
+    final RequestMatcher hasSessionToken
+        = request -> SessionTokenFilter.getToken(request).isPresent();
+    http
+      .sessionManagement()
+        .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+      .and()
+        .csrf()
+        .csrfTokenRepository(CookieCsrfTokenRepository.withHttpOnlyFalse())
+        .requireCsrfProtectionMatcher(new AndRequestMatcher(CsrfFilter.DEFAULT_CSRF_MATCHER,
+            new NegatedRequestMatcher(hasSessionToken)))
+      .and()
+        .logout()
+        .addLogoutHandler((request, response, authentication) ->
+            SessionTokenFilter.getToken(request).ifPresent(sessionTokens::revoke))
+      .and()
+        .addFilterBefore(new SessionTokenFilter(sessionTokens, authenticationEntryPoint),
+            UsernamePasswordAuthenticationFilter.class);
   }
   
 }
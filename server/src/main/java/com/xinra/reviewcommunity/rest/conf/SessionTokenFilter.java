@@ -0,0 +1,63 @@
+package com.xinra.reviewcommunity.rest.conf;
+
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
+import com.xinra.reviewcommunity.service.AuthenticationProviderImpl;
+import com.xinra.reviewcommunity.service.SessionTokens;
+import java.io.IOException;
+import java.util.Optional;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Authenticates requests that carry a session token (see {@link SessionTokens}) in the
+ * {@code Authorization} header. Requests with an invalid, expired or revoked token are rejected,
+ * so that the client knows it has to log in again.
+ *
+ * <p>This is not a bean, so that Spring Boot doesn't register it for all requests in addition to
+ * the security filter chain.
+ */
+@RequiredArgsConstructor
+public class SessionTokenFilter extends OncePerRequestFilter {
+
+  private static final String BEARER = "Bearer ";
+
+  /**
+   * Returns the session token of a request if there is one.
+   */
+  public static Optional<String> getToken(HttpServletRequest request) {
+    final String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+    return header != null && header.startsWith(BEARER)
+        ? Optional.of(header.substring(BEARER.length())) : Optional.empty();
+  }
+
+  private final @NonNull SessionTokens sessionTokens;
+  private final @NonNull AuthenticationEntryPoint authenticationEntryPoint;
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+
+    final Optional<String> token = getToken(request);
+    if (token.isPresent()) {
+      final Optional<AuthenticatedUserDto> user = sessionTokens.verify(token.get());
+      if (!user.isPresent()) {
+        authenticationEntryPoint.commence(request, response,
+            new BadCredentialsException("Invalid session token"));
+        return;
+      }
+      SecurityContextHolder.getContext()
+          .setAuthentication(AuthenticationProviderImpl.getAuthentication(user.get()));
+    }
+    filterChain.doFilter(request, response);
+  }
+
+}
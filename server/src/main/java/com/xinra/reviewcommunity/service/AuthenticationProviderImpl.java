@@ -1,18 +1,23 @@
 package com.xinra.reviewcommunity.service;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Streams;
+import com.xinra.reviewcommunity.auth.PermissionVoter;
 import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
 import com.xinra.reviewcommunity.entity.PasswordLogin;
 import com.xinra.reviewcommunity.entity.User;
 import com.xinra.reviewcommunity.repo.PasswordLoginRepository;
+import com.xinra.reviewcommunity.service.PasswordHasher.PasswordHasherBusyException;
 import com.xinra.reviewcommunity.shared.Role;
 import com.xinra.reviewcommunity.shared.UserLevel;
 import com.xinra.reviewcommunity.shared.dto.DtoFactory;
 
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -20,11 +25,17 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 
+@Slf4j
 @RequiredArgsConstructor
 public class AuthenticationProviderImpl implements AuthenticationProvider {
   
+  /**
+   * Granted authorities by authority mask.
+   */
+  private static final ConcurrentMap<Long, Set<GrantedAuthority>> GRANTED_AUTHORITIES
+      = new ConcurrentHashMap<>();
+  
   /**
    * Converts a {@link User} entity to an {@link AuthenticatedUserDto}. Note that
    * {@link User#getRoles()} has to be fetched already.
@@ -36,6 +47,7 @@ public class AuthenticationProviderImpl implements AuthenticationProvider {
     dto.setRoles(Role.getAllTransitiveRoles(user.getRoles()));
     dto.setPermissions(Role.getAllTransitivePermissions(dto.getRoles()));
     dto.setLevel(UserLevel.getFromRoles(dto.getRoles()));
+    dto.setAuthorityMask(Role.getAuthorityMask(dto.getRoles()));
     return dto;
   }
   
@@ -43,17 +55,25 @@ public class AuthenticationProviderImpl implements AuthenticationProvider {
    * Creates an {@link Authentication} from an {@link AuthenticatedUserDto}.
    */
   public static Authentication getAuthentication(AuthenticatedUserDto dto) {
-    // combine roles and permissions so that both can be used with Spring Security
-    Set<GrantedAuthority> grantedAuthorities 
-        = Streams.concat(dto.getRoles().stream(), dto.getPermissions().stream())
-          .map(Object::toString)
-          .map(SimpleGrantedAuthority::new)
-          .collect(Collectors.toSet());
+    // there are only a few combinations of roles, so the authorities are shared
+    Set<GrantedAuthority> grantedAuthorities = GRANTED_AUTHORITIES.computeIfAbsent(
+        dto.getAuthorityMask(), mask -> getGrantedAuthorities(dto));
     
     // password is not needed anymore so we omit it
     return new UsernamePasswordAuthenticationToken(dto, null, grantedAuthorities);
   }
   
+  /**
+   * Combines roles and permissions so that both can be used with Spring Security. Access to
+   * methods is decided by the authority mask (see {@link PermissionVoter}) though.
+   */
+  private static Set<GrantedAuthority> getGrantedAuthorities(AuthenticatedUserDto dto) {
+    return Streams.concat(dto.getRoles().stream(), dto.getPermissions().stream())
+        .map(Object::toString)
+        .map(SimpleGrantedAuthority::new)
+        .collect(ImmutableSet.toImmutableSet());
+  }
+  
   /**
    * Creates an {@link Authentication} from a {@link User} entity. Note that {@link User#getRoles()}
    * has to be fetched already.
@@ -64,6 +84,7 @@ public class AuthenticationProviderImpl implements AuthenticationProvider {
   
   private final @NonNull DtoFactory dtoFactory;
   private final @NonNull PasswordLoginRepository<PasswordLogin> passwordLoginRepo;
+  private final @NonNull PasswordHasher passwordHasher;
 
   @Override
   public Authentication authenticate(Authentication authentication) throws AuthenticationException {
@@ -77,13 +98,31 @@ public class AuthenticationProviderImpl implements AuthenticationProvider {
     
     PasswordLogin login = passwordLoginRepo.findByUserNameEager(username);
     
-    if (login == null || !BCrypt.checkpw(password, login.getPasswordHash())) {
+    if (login == null || !passwordHasher.verify(username, password, login.getPasswordHash())) {
       throw new BadCredentialsException("Bad Credentials");
     }
     
+    if (passwordHasher.needsRehash(login.getPasswordHash())) {
+      rehash(login, password);
+    }
+    
     return getAuthentication(login.getUser(), dtoFactory);
   }
 
+  /**
+   * Replaces the hash of a login with one of the configured cost. This can only be done while the
+   * password is known. If the hasher is busy, it is tried again on the next login.
+   */
+  private void rehash(PasswordLogin login, String password) {
+    try {
+      login.setPasswordHash(passwordHasher.hash(password));
+    } catch (PasswordHasherBusyException ex) {
+      return;
+    }
+    passwordLoginRepo.save(login);
+    log.info("Rehashed password of user with name '{}'", login.getUser().getName());
+  }
+
   @Override
   public boolean supports(Class<?> authentication) {
     return authentication.equals(UsernamePasswordAuthenticationToken.class);
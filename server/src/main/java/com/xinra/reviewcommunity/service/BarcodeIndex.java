@@ -0,0 +1,216 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.xinra.reviewcommunity.entity.Barcode;
+import com.xinra.reviewcommunity.repo.BarcodeRepository;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds all barcodes of each market in memory. Most scanned barcodes are unknown, which a Bloom
+ * filter answers without probing the map. Numeric codes (EAN, UPC) are held as {@code long}s in a
+ * primitive map, others in a regular one.
+ *
+ * <p>Changes are applied after commit. Changes that don't go through the services (or happen on
+ * another instance) are picked up by a periodic reload, which keeps changes that are applied
+ * while it is in progress (see {@link ReloadableState}). Until then the answers may be stale, so
+ * they are only hints that {@link BarcodeService} confirms with the database.
+ */
+@Slf4j
+@Component
+public class BarcodeIndex {
+
+  /**
+   * Returned by {@link #get(String, String)} for barcodes that don't exist.
+   */
+  public static final int UNKNOWN = -1;
+
+  /**
+   * Returned by {@link #get(String, String)} for barcodes that are out of scope (see
+   * {@link Barcode#getProduct()}). Serials are never 0.
+   */
+  public static final int OUT_OF_SCOPE = 0;
+
+  /**
+   * Numeric codes up to this length fit into a long along with their length.
+   */
+  private static final int MAX_NUMERIC_LENGTH = 17;
+  private static final int LENGTH_SHIFT = 57;
+
+  private static final double BLOOM_FILTER_FPP = 0.01;
+  private static final int MIN_EXPECTED_CODES = 10000;
+
+  private static class Market {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final LongIntHashMap numericCodes;
+    private final BloomFilter<Long> bloomFilter;
+    private final Map<String, Integer> otherCodes = new HashMap<>();
+
+    /**
+     * Creates an empty market.
+     * @param expectedCodes number of codes to be added. The Bloom filter keeps its false positive
+     *     probability for twice as many. It degrades if more are added, until the next reload.
+     */
+    private Market(int expectedCodes) {
+      numericCodes = new LongIntHashMap(expectedCodes, UNKNOWN);
+      bloomFilter = BloomFilter.create(Funnels.longFunnel(),
+          Math.max(2 * expectedCodes, MIN_EXPECTED_CODES), BLOOM_FILTER_FPP);
+    }
+
+    private int get(String code) {
+      final long key = toKey(code);
+      lock.readLock().lock();
+      try {
+        if (key == -1) {
+          return otherCodes.getOrDefault(code, UNKNOWN);
+        }
+        return bloomFilter.mightContain(key) ? numericCodes.get(key) : UNKNOWN;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    private void put(String code, int productSerial) {
+      final long key = toKey(code);
+      lock.writeLock().lock();
+      try {
+        if (key == -1) {
+          otherCodes.put(code, productSerial);
+        } else {
+          bloomFilter.put(key);
+          numericCodes.put(key, productSerial);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Removed codes remain in the Bloom filter until the next reload, which only costs a probe.
+     */
+    private void remove(String code) {
+      final long key = toKey(code);
+      lock.writeLock().lock();
+      try {
+        if (key == -1) {
+          otherCodes.remove(code);
+        } else {
+          numericCodes.remove(key);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private final ReloadableState<ConcurrentMap<String, Market>> markets
+      = new ReloadableState<>(new ConcurrentHashMap<>());
+
+  private @Autowired BarcodeRepository<Barcode> barcodeRepo;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // reloading may be triggered while another transaction is active
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Encodes a numeric code and its length (so that leading zeros are significant) as a positive
+   * long. Returns -1 for codes that can't be encoded.
+   */
+  private static long toKey(String code) {
+    final int length = code.length();
+    if (length == 0 || length > MAX_NUMERIC_LENGTH) {
+      return -1;
+    }
+    long number = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = code.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      number = number * 10 + (c - '0');
+    }
+    return ((long) length << LENGTH_SHIFT) | number;
+  }
+
+  /**
+   * Returns the serial of the product with the given barcode in the given market,
+   * {@link #OUT_OF_SCOPE} or {@link #UNKNOWN}.
+   */
+  public int get(@NonNull String marketId, @NonNull String code) {
+    final Market market = markets.get().get(marketId);
+    return market == null ? UNKNOWN : market.get(code);
+  }
+
+  /**
+   * Adds a barcode or changes its product once the current transaction commits.
+   * @param productSerial or {@link #OUT_OF_SCOPE}
+   */
+  public void put(@NonNull String marketId, @NonNull String code, int productSerial) {
+    ServiceUtil.afterCommit(() -> markets.change(current ->
+        current.computeIfAbsent(marketId, id -> new Market(0)).put(code, productSerial)));
+  }
+
+  /**
+   * Removes a barcode once the current transaction commits.
+   */
+  public void remove(@NonNull String marketId, @NonNull String code) {
+    ServiceUtil.afterCommit(() -> markets.change(current -> {
+      final Market market = current.get(marketId);
+      if (market != null) {
+        market.remove(code);
+      }
+    }));
+  }
+
+  /**
+   * Loads all barcodes from the database and replaces the barcodes of all markets.
+   */
+  @Scheduled(fixedDelayString = "${reviewcommunity.barcode.reload-interval:600000}",
+      initialDelayString = "${reviewcommunity.barcode.reload-interval:600000}")
+  public void reload() {
+    markets.reload(() -> {
+      final List<Object[]> rows = transactionTemplate.execute(
+          status -> barcodeRepo.findAllForIndex());
+
+      // counted first to size the maps and Bloom filters
+      final Map<String, Integer> numBarcodes = new HashMap<>();
+      for (Object[] row : rows) {
+        numBarcodes.merge((String) row[0], 1, Integer::sum);
+      }
+      final ConcurrentMap<String, Market> loaded = new ConcurrentHashMap<>();
+      numBarcodes.forEach((marketId, count) -> loaded.put(marketId, new Market(count)));
+      for (Object[] row : rows) {
+        final Integer productSerial = (Integer) row[2];
+        loaded.get((String) row[0]).put((String) row[1],
+            productSerial == null ? OUT_OF_SCOPE : productSerial);
+      }
+      log.info("Loaded {} barcodes", rows.size());
+      return loaded;
+    });
+  }
+
+}
@@ -1,12 +1,25 @@
 package com.xinra.reviewcommunity.service;
 
+import com.xinra.nucleus.common.ContextHolder;
+import com.xinra.reviewcommunity.Context;
 import com.xinra.reviewcommunity.entity.Barcode;
 import com.xinra.reviewcommunity.entity.Product;
 import com.xinra.reviewcommunity.repo.BarcodeRepository;
+import com.xinra.reviewcommunity.shared.BarcodeStatus;
+import com.xinra.reviewcommunity.shared.dto.BarcodeResolutionDto;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,7 +27,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Slf4j
 @Service
 @Transactional
-public class BarcodeService extends AbstractService {
+public class BarcodeService extends AbstractService
+    implements ApplicationListener<ContextRefreshedEvent>, Ordered {
 
   public static class BarcodeNotFoundException extends RuntimeException {
     private static final long serialVersionUID = 1L;
@@ -32,6 +46,22 @@ public class BarcodeService extends AbstractService {
     }
   }
 
+  public static class TooManyBarcodesException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private TooManyBarcodesException(int max) {
+      super("At most " + max + " barcodes can be resolved at once");
+    }
+  }
+
+  public static class InvalidBarcodeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private InvalidBarcodeException() {
+      super("Barcodes must not be null");
+    }
+  }
+
   public static class BarcodeAlreadyExistsException extends RuntimeException {
     private static final long serialVersionUID = 1L;
 
@@ -45,7 +75,15 @@ public class BarcodeService extends AbstractService {
     }
   }
 
+  /**
+   * Maximum number of barcodes that can be resolved at once.
+   */
+  public static final int MAX_BATCH_SIZE = 500;
+
   private @Autowired BarcodeRepository<Barcode> barcodeRepo;
+  private @Autowired BarcodeIndex barcodeIndex;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired ContextHolder<Context> contextHolder;
 
   /**
    * Returns the serial of the product with the given barcode.
@@ -56,17 +94,90 @@ public class BarcodeService extends AbstractService {
    *           if the given barcode is not in the scope of this application
    */
   public int getProductSerial(@NonNull String code) {
-    final Barcode barcode = barcodeRepo.findByCode(code);
+    final int productSerial = resolve(getMarketId(), Collections.singletonList(code))
+        .getOrDefault(code, BarcodeIndex.UNKNOWN);
 
-    if (barcode == null) {
+    if (productSerial == BarcodeIndex.UNKNOWN) {
       throw new BarcodeNotFoundException(code);
     }
 
-    if (barcode.getProduct() == null) {
+    if (productSerial == BarcodeIndex.OUT_OF_SCOPE) {
       throw new ProductOutOfScopeException(code);
     }
 
-    return barcode.getProduct().getSerial();
+    return productSerial;
+  }
+  
+  /**
+   * Resolves multiple barcodes at once. Unlike {@link #getProductSerial(String)}, unknown and
+   * out of scope barcodes are reported in the result. All codes are looked up with one query.
+   * 
+   * @return one resolution per code in the given order
+   * @throws TooManyBarcodesException
+   *           if there are more than {@link #MAX_BATCH_SIZE} codes
+   * @throws InvalidBarcodeException
+   *           if a code is null
+   */
+  public List<BarcodeResolutionDto> resolveBarcodes(@NonNull List<String> codes) {
+    if (codes.size() > MAX_BATCH_SIZE) {
+      throw new TooManyBarcodesException(MAX_BATCH_SIZE);
+    }
+    if (codes.contains(null)) {
+      throw new InvalidBarcodeException();
+    }
+    
+    final Map<String, Integer> productSerials = resolve(getMarketId(), codes);
+    final List<BarcodeResolutionDto> resolutions = new ArrayList<>(codes.size());
+    for (String code : codes) {
+      final int productSerial = productSerials.getOrDefault(code, BarcodeIndex.UNKNOWN);
+      final BarcodeResolutionDto resolution = dtoFactory.createDto(BarcodeResolutionDto.class);
+      resolution.setBarcode(code);
+      if (productSerial == BarcodeIndex.UNKNOWN) {
+        resolution.setStatus(BarcodeStatus.UNKNOWN);
+      } else if (productSerial == BarcodeIndex.OUT_OF_SCOPE) {
+        resolution.setStatus(BarcodeStatus.OUT_OF_SCOPE);
+      } else {
+        resolution.setStatus(BarcodeStatus.FOUND);
+        resolution.setProductSerial(productSerial);
+      }
+      resolutions.add(resolution);
+    }
+    return resolutions;
+  }
+  
+  /**
+   * Returns the product serials (or {@link BarcodeIndex#OUT_OF_SCOPE}) of those of the given codes
+   * that exist in the given market. The {@link BarcodeIndex} only learns about changes on other
+   * instances with its periodic reload, so its answers are just hints: All codes are confirmed
+   * with one query that uses the index on code and market, and the in-memory index is corrected
+   * where it differs.
+   */
+  private Map<String, Integer> resolve(String marketId, Collection<String> codes) {
+    if (codes.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Map<String, Integer> productSerials = new HashMap<>();
+    for (Object[] row : barcodeRepo.findByMarketIdAndCodes(marketId, codes)) {
+      final Integer productSerial = (Integer) row[1];
+      productSerials.put((String) row[0],
+          productSerial == null ? BarcodeIndex.OUT_OF_SCOPE : productSerial);
+    }
+    for (String code : codes) {
+      final int confirmed = productSerials.getOrDefault(code, BarcodeIndex.UNKNOWN);
+      if (barcodeIndex.get(marketId, code) != confirmed) {
+        log.debug("Correcting barcode {} in the index of market {}", code, marketId);
+        if (confirmed == BarcodeIndex.UNKNOWN) {
+          barcodeIndex.remove(marketId, code);
+        } else {
+          barcodeIndex.put(marketId, code, confirmed);
+        }
+      }
+    }
+    return productSerials;
+  }
+  
+  private String getMarketId() {
+    return marketRegistry.get(contextHolder.get().getMarket().get().getSlug()).get().getId();
   }
 
   /**
@@ -95,10 +206,13 @@ public class BarcodeService extends AbstractService {
     if (barcode == null) {
       barcode = entityFactory.createEntity(Barcode.class);
       barcode.setProduct(product);
+    } else {
+      barcodeIndex.remove(getMarketId(), barcode.getCode());
     }
 
     barcode.setCode(code);
     barcodeRepo.save(barcode);
+    barcodeIndex.put(getMarketId(), code, product.getSerial());
     log.info("Set barcode of {} to {}", product, barcode);
   }
 
@@ -116,6 +230,7 @@ public class BarcodeService extends AbstractService {
     }
 
     barcodeRepo.delete(barcode);
+    barcodeIndex.remove(getMarketId(), code);
     log.info("Deleted barcode {}", barcode);
   }
 
@@ -138,6 +253,7 @@ public class BarcodeService extends AbstractService {
     barcode = entityFactory.createEntity(Barcode.class);
     barcode.setCode(code);
     barcodeRepo.save(barcode);
+    barcodeIndex.put(getMarketId(), code, BarcodeIndex.OUT_OF_SCOPE);
     log.info("Marked barcode {} as out of scope", barcode);
   }
   
@@ -156,4 +272,14 @@ public class BarcodeService extends AbstractService {
     }
   }
 
+  @Override
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    barcodeIndex.reload();
+  }
+
+  @Override
+  public int getOrder() {
+    return 40;
+  }
+
 }
@@ -1,31 +1,34 @@
 package com.xinra.reviewcommunity.service;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
 import com.xinra.nucleus.common.ContextHolder;
 import com.xinra.reviewcommunity.Context;
 import com.xinra.reviewcommunity.entity.Category;
-import com.xinra.reviewcommunity.entity.Market;
+import com.xinra.reviewcommunity.entity.CategoryClosure;
+import com.xinra.reviewcommunity.repo.CategoryClosureRepository;
 import com.xinra.reviewcommunity.repo.CategoryRepository;
-import com.xinra.reviewcommunity.repo.MarketRepository;
-import com.xinra.reviewcommunity.shared.dto.CategoryDto;
 import com.xinra.reviewcommunity.shared.dto.CreateCategoryDto;
 import com.xinra.reviewcommunity.shared.dto.SerialDto;
-import java.util.Collection;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
 @Service
 @Transactional
-public class CategoryService extends AbstractService {
+public class CategoryService extends AbstractService
+    implements ApplicationListener<ContextRefreshedEvent>, Ordered {
 
   private @Autowired ContextHolder<Context> contextHolder;
   private @Autowired CategoryRepository<Category> categoryRepo;
-  private @Autowired MarketRepository<Market> marketRepo;
+  private @Autowired CategoryClosureRepository<CategoryClosure> closureRepo;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired CategoryTree categoryTree;
 
   /**
    * Creates a new Category.
@@ -47,6 +50,8 @@ public class CategoryService extends AbstractService {
     int serial = serviceProvider.getService(SerialService.class).getNextSerial(Category.class);
     category.setSerial(serial);
     categoryRepo.save(category);
+    addToClosure(category);
+    categoryTree.addCategory(serial, createCategoryDto.getParentSerial(), category.getName());
 
     log.info("Created category with name '{}'", createCategoryDto.getName());
 
@@ -56,58 +61,66 @@ public class CategoryService extends AbstractService {
   }
 
   /**
-   * Returns all categories in a tree structure.
+   * Adds the closure entries of a new category: The category itself and all ancestors of its
+   * parent.
    */
-  public Collection<CategoryDto> getCategoryTree() {
-    
-    Multimap<Integer, CategoryDto> children = MultimapBuilder.treeKeys().arrayListValues().build();
-    
-    Market market = marketRepo.findBySlug(contextHolder.get().getMarket().get().getSlug());
-    
-    for (Object[] result : categoryRepo.findAllWithNumProducts(market)) {
-      CategoryDto category = toDtoIgnoringChildrenAndNumProducts((Category) result[0]);
-      category.setNumProducts((int) (long) result[1]);
-      children.put(category.getParentSerial(), category);
+  private void addToClosure(Category category) {
+    saveClosure(category, category, 0);
+    if (category.getParent() != null) {
+      for (CategoryClosure parentClosure
+          : closureRepo.findByDescendantId(category.getParent().getPk().getId())) {
+        saveClosure(parentClosure.getAncestor(), category, parentClosure.getDepth() + 1);
+      }
     }
-    
-    Collection<CategoryDto> rootCategories = children.get(0);
-    rootCategories.forEach(rootCategory -> addChildrenRecursively(rootCategory, children));
-    cumulateNumProductsRecursively(rootCategories);
-        
-    return rootCategories;
+  }
+  
+  private void saveClosure(Category ancestor, Category descendant, int depth) {
+    CategoryClosure closure = entityFactory.createEntity(CategoryClosure.class);
+    closure.setAncestor(ancestor);
+    closure.setDescendant(descendant);
+    closure.setDepth(depth);
+    closureRepo.save(closure);
   }
   
   /**
-   * A product that is placed in a category is also included in all parents of this category.
-   * This function cumulates the number of products of a category accordingly.
+   * Fills the closure table if it is empty, e.g. because the categories were created before it
+   * existed.
    */
-  private int cumulateNumProductsRecursively(Collection<CategoryDto> children) {
-    int cumulatedNumProducts = 0;
-    for (CategoryDto child : children) {
-      int cumulatedNumProductsOfChild = child.getNumProducts();
-      cumulatedNumProductsOfChild += cumulateNumProductsRecursively(child.getChildren());
-      child.setNumProducts(cumulatedNumProductsOfChild);
-      cumulatedNumProducts += cumulatedNumProductsOfChild;
+  private void buildClosureIfEmpty() {
+    if (closureRepo.count() > 0) {
+      return;
     }
-    return cumulatedNumProducts;
-  }
-  
-  private void addChildrenRecursively(CategoryDto parent, Multimap<Integer, CategoryDto> children) {
-    parent.setChildren(children.get(parent.getSerial()));
-    parent.getChildren().forEach(child -> addChildrenRecursively(child, children));
+    int numCategories = 0;
+    for (Category descendant : categoryRepo.findAll()) {
+      int depth = 0;
+      for (Category ancestor = descendant; ancestor != null; ancestor = ancestor.getParent()) {
+        saveClosure(ancestor, descendant, depth++);
+      }
+      numCategories++;
+    }
+    log.info("Built category closure of {} categories", numCategories);
   }
 
-  private CategoryDto toDtoIgnoringChildrenAndNumProducts(Category category) {
+  /**
+   * Returns all categories of the current market in a tree structure. This doesn't access the
+   * database.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public CategoryTree.Snapshot getCategoryTree() {
+    String marketId = marketRegistry.get(contextHolder.get().getMarket().get().getSlug())
+        .get().getId();
+    return categoryTree.get(marketId);
+  }
 
-    CategoryDto categoryDto = dtoFactory.createDto(CategoryDto.class);
+  @Override
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    buildClosureIfEmpty();
+    categoryTree.reload();
+  }
 
-    categoryDto.setName(category.getName());
-    categoryDto.setSerial(category.getSerial());
-    if (category.getParent() != null) {
-      categoryDto.setParentSerial(category.getParent().getSerial());
-    }
-    
-    return categoryDto;
+  @Override
+  public int getOrder() {
+    return 20;
   }
 
 }
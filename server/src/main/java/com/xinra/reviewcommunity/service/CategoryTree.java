@@ -0,0 +1,216 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.xinra.reviewcommunity.entity.Category;
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.CategoryRepository;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import com.xinra.reviewcommunity.shared.dto.CategoryDto;
+import com.xinra.reviewcommunity.shared.dto.DtoFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds the category tree of each market in memory, so that reading it doesn't access the
+ * database. The trees are immutable snapshots. Creating a category or adding products replaces
+ * the affected snapshots after commit, based on the categories and numbers of products held here.
+ *
+ * <p>Changes that don't go through the services (or happen on another instance) are picked up by
+ * a periodic reload, which keeps changes that are applied while it is in progress (see
+ * {@link ReloadableState}).
+ */
+@Slf4j
+@Component
+public class CategoryTree {
+
+  @Getter
+  @RequiredArgsConstructor
+  public static class Snapshot {
+
+    /**
+     * Hash of the tree, so it is the same on all instances and across restarts. Can be used as a
+     * cache validator.
+     */
+    private final long version;
+
+    /**
+     * Shared by all callers. Must not be modified.
+     */
+    private final ImmutableList<CategoryDto> rootCategories;
+  }
+
+  @RequiredArgsConstructor
+  private static class Node {
+    private final int serial;
+    private final int parentSerial;
+    private final String name;
+  }
+
+  /**
+   * Categories and numbers of products (not including children) the snapshots are built from.
+   */
+  private static class Data {
+    private final Map<Integer, Node> categories = new TreeMap<>();
+    private final Map<String, Map<Integer, Integer>> numProductsByMarket = new HashMap<>();
+  }
+
+  // changed while holding the lock of this, so that snapshots are built from consistent data
+  private final ReloadableState<Data> data = new ReloadableState<>(new Data());
+
+  private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+  private @Autowired CategoryRepository<Category> categoryRepo;
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired DtoFactory dtoFactory;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // reloading may be triggered while another transaction is active
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Returns the category tree of the given market. The number of products of a category includes
+   * the products of all its descendants.
+   */
+  public Snapshot get(@NonNull String marketId) {
+    final Snapshot snapshot = snapshots.get(marketId);
+    return snapshot != null ? snapshot : rebuild(marketId);
+  }
+
+  /**
+   * Adds a category to the trees of all markets once the current transaction commits.
+   */
+  public void addCategory(int serial, int parentSerial, String name) {
+    final Node node = new Node(serial, parentSerial, name);
+    ServiceUtil.afterCommit(() -> {
+      synchronized (this) {
+        data.change(current -> current.categories.put(serial, node));
+        new ArrayList<>(snapshots.keySet()).forEach(this::rebuild);
+      }
+    });
+  }
+
+  /**
+   * Changes the number of products in a category of a market by {@code delta} once the current
+   * transaction commits. Use a negative delta for removed products.
+   */
+  public void addProducts(String marketId, int categorySerial, int delta) {
+    ServiceUtil.afterCommit(() -> {
+      synchronized (this) {
+        data.change(current -> current.numProductsByMarket
+            .computeIfAbsent(marketId, id -> new HashMap<>())
+            .merge(categorySerial, delta, Integer::sum));
+        rebuild(marketId);
+      }
+    });
+  }
+
+  /**
+   * Loads all categories and numbers of products from the database and replaces all trees.
+   */
+  @Scheduled(fixedDelayString = "${reviewcommunity.category-tree.reload-interval:600000}",
+      initialDelayString = "${reviewcommunity.category-tree.reload-interval:600000}")
+  public void reload() {
+    data.reload(() -> transactionTemplate.execute(status -> {
+      final Data loaded = new Data();
+      // numbers of products first, because changes of them that are committed in between are
+      // counted twice (see ReloadableState)
+      for (Object[] row : productRepo.countByMarketAndCategory()) {
+        loaded.numProductsByMarket.computeIfAbsent((String) row[0], id -> new HashMap<>())
+            .put((Integer) row[1], (int) (long) row[2]);
+      }
+      for (Category category : categoryRepo.findAll()) {
+        loaded.categories.put(category.getSerial(), new Node(category.getSerial(),
+            category.getParent() == null ? 0 : category.getParent().getSerial(),
+            category.getName()));
+      }
+      return loaded;
+    }));
+
+    synchronized (this) {
+      snapshots.clear();
+      new ArrayList<>(data.get().numProductsByMarket.keySet()).forEach(this::rebuild);
+    }
+    log.info("Loaded category tree of {} categories", data.get().categories.size());
+  }
+
+  /**
+   * Builds a new snapshot of the tree of a market. This doesn't access the database.
+   */
+  private synchronized Snapshot rebuild(String marketId) {
+    final Data current = data.get();
+    final Map<Integer, Integer> numProducts = current.numProductsByMarket
+        .getOrDefault(marketId, Collections.emptyMap());
+    final Multimap<Integer, CategoryDto> children
+        = MultimapBuilder.hashKeys().arrayListValues().build();
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+
+    // categories are sorted by serial, so children are as well
+    for (Node node : current.categories.values()) {
+      CategoryDto category = dtoFactory.createDto(CategoryDto.class);
+      category.setSerial(node.serial);
+      category.setParentSerial(node.parentSerial);
+      category.setName(node.name);
+      category.setNumProducts(numProducts.getOrDefault(node.serial, 0));
+      children.put(node.parentSerial, category);
+      hasher.putInt(node.serial).putInt(node.parentSerial).putInt(category.getNumProducts())
+          .putUnencodedChars(Strings.nullToEmpty(node.name)).putChar('\0');
+    }
+
+    final ImmutableList<CategoryDto> rootCategories = ImmutableList.copyOf(children.get(0));
+    rootCategories.forEach(rootCategory -> addChildrenRecursively(rootCategory, children));
+    cumulateNumProductsRecursively(rootCategories);
+
+    final Snapshot snapshot = new Snapshot(hasher.hash().asLong(), rootCategories);
+    snapshots.put(marketId, snapshot);
+    return snapshot;
+  }
+
+  private void addChildrenRecursively(CategoryDto parent, Multimap<Integer, CategoryDto> children) {
+    parent.setChildren(ImmutableList.copyOf(children.get(parent.getSerial())));
+    parent.getChildren().forEach(child -> addChildrenRecursively(child, children));
+  }
+
+  /**
+   * A product that is placed in a category is also included in all parents of this category.
+   * This function cumulates the number of products of a category accordingly.
+   */
+  private int cumulateNumProductsRecursively(Collection<CategoryDto> children) {
+    int cumulatedNumProducts = 0;
+    for (CategoryDto child : children) {
+      int cumulatedNumProductsOfChild = child.getNumProducts();
+      cumulatedNumProductsOfChild += cumulateNumProductsRecursively(child.getChildren());
+      child.setNumProducts(cumulatedNumProductsOfChild);
+      cumulatedNumProducts += cumulatedNumProductsOfChild;
+    }
+    return cumulatedNumProducts;
+  }
+
+}
@@ -6,7 +6,8 @@ import com.xinra.nucleus.entity.DefaultEntityFactory;
 import com.xinra.reviewcommunity.Context;
 import com.xinra.reviewcommunity.entity.Market;
 import com.xinra.reviewcommunity.entity.MarketSpecificEntity;
-import com.xinra.reviewcommunity.repo.MarketRepository;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
@@ -18,7 +19,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class ContextAwareEntityFactory extends DefaultEntityFactory {
   
-  private @Autowired MarketRepository<Market> marketRepo;
+  private @Autowired MarketRegistry marketRegistry;
+  private @PersistenceContext EntityManager entityManager;
   private @Autowired ContextHolder<Context> contextHolder;
 
   @Override
@@ -26,8 +28,12 @@ public class ContextAwareEntityFactory extends DefaultEntityFactory {
     T entity = super.createEntity(type);
     
     if (entity instanceof MarketSpecificEntity) {
-      ((MarketSpecificEntity) entity).setMarket(
-          marketRepo.findBySlug((contextHolder.get().getMarket().get().getSlug())));
+      final String slug = contextHolder.get().getMarket().get().getSlug();
+      final String marketId = marketRegistry.get(slug)
+          .orElseThrow(() -> new IllegalStateException("Unknown market " + slug))
+          .getId();
+      // the market is not loaded, only its id is needed to set the foreign key
+      ((MarketSpecificEntity) entity).setMarket(entityManager.getReference(Market.class, marketId));
     }
     
     return entity;
@@ -0,0 +1,164 @@
+package com.xinra.reviewcommunity.service;
+
+/**
+ * A map from {@code long} to {@code int} with open addressing and linear probing. Keys and values
+ * are held in two primitive arrays, so there are no boxed objects or entry nodes and a lookup
+ * usually touches a single cache line of each array.
+ *
+ * <p>Not thread-safe.
+ */
+class LongIntHashMap {
+
+  private static final int MIN_CAPACITY = 16;
+  private static final double MAX_LOAD = 0.5;
+
+  /**
+   * Marks free slots. The key 0 itself is held outside of the arrays.
+   */
+  private static final long FREE = 0;
+
+  private final int missingValue;
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  private boolean hasFreeKey;
+  private int freeKeyValue;
+
+  /**
+   * Creates a map.
+   * @param expectedSize number of entries that can be put without resizing
+   * @param missingValue returned by {@link #get(long)} for keys that are not in the map
+   */
+  LongIntHashMap(int expectedSize, int missingValue) {
+    this.missingValue = missingValue;
+    allocate(capacityFor(expectedSize));
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * MAX_LOAD < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Spreads the bits of the key (Fibonacci hashing), so that consecutive keys like the barcodes of
+   * one manufacturer don't form long probe sequences.
+   */
+  private static int slot(long key, int mask) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the value of the key or the missing value if there is none.
+   */
+  public int get(long key) {
+    if (key == FREE) {
+      return hasFreeKey ? freeKeyValue : missingValue;
+    }
+    for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+      final long k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == FREE) {
+        return missingValue;
+      }
+    }
+  }
+
+  /**
+   * Associates the key with the value, replacing the previous value if there is one.
+   */
+  public void put(long key, int value) {
+    if (key == FREE) {
+      if (!hasFreeKey) {
+        hasFreeKey = true;
+        size++;
+      }
+      freeKeyValue = value;
+      return;
+    }
+    int i = slot(key, mask);
+    while (keys[i] != FREE) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size > keys.length * MAX_LOAD) {
+      resize(keys.length << 1);
+    }
+  }
+
+  /**
+   * Removes the key if it is in the map.
+   */
+  public void remove(long key) {
+    if (key == FREE) {
+      if (hasFreeKey) {
+        hasFreeKey = false;
+        size--;
+      }
+      return;
+    }
+    int i = slot(key, mask);
+    while (keys[i] != key) {
+      if (keys[i] == FREE) {
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    size--;
+
+    // Shift following entries of the same probe sequence back, so that lookups don't stop at the
+    // freed slot. This avoids tombstones.
+    int free = i;
+    for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+      final int home = slot(keys[j], mask);
+      // the entry may move to the free slot if it lies cyclically between its home and itself
+      if (((j - home) & mask) >= ((j - free) & mask)) {
+        keys[free] = keys[j];
+        values[free] = values[j];
+        free = j;
+      }
+    }
+    keys[free] = FREE;
+  }
+
+  private void resize(int capacity) {
+    final long[] oldKeys = keys;
+    final int[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      final long key = oldKeys[i];
+      if (key != FREE) {
+        int j = slot(key, mask);
+        while (keys[j] != FREE) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = key;
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+}
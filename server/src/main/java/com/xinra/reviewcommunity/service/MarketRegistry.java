@@ -0,0 +1,155 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.xinra.reviewcommunity.entity.Market;
+import com.xinra.reviewcommunity.repo.MarketRepository;
+import com.xinra.reviewcommunity.shared.dto.DtoFactory;
+import com.xinra.reviewcommunity.shared.dto.MarketDto;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Holds all markets in memory, so that looking up the market of a request doesn't access the
+ * database. The markets and their version are published together as an immutable
+ * {@link Snapshot}, which is replaced as a whole whenever a market changes on this instance.
+ *
+ * <p>Markets that are created or changed on another instance are picked up by a periodic reload.
+ */
+@Slf4j
+@Component
+public class MarketRegistry implements Market.UpdateListener {
+
+  @Getter
+  @RequiredArgsConstructor
+  public static class Entry {
+    private final String id;
+    private final String slug;
+    private final String name;
+  }
+
+  public static class Snapshot {
+
+    private static final Snapshot EMPTY = new Snapshot(ImmutableMap.of(), 0);
+
+    private final ImmutableMap<String, Entry> entries;
+
+    /**
+     * Hash of the markets, so it is the same on all instances and across restarts. Can be used as
+     * a cache validator.
+     */
+    private final @Getter long version;
+
+    private Snapshot(ImmutableMap<String, Entry> entries, long version) {
+      this.entries = entries;
+      this.version = version;
+    }
+
+    /**
+     * Returns the market with the given slug if there is one.
+     */
+    public Optional<Entry> get(String slug) {
+      return Optional.ofNullable(entries.get(slug));
+    }
+
+    /**
+     * Returns all markets, sorted by slug.
+     */
+    public ImmutableCollection<Entry> getAll() {
+      return entries.values();
+    }
+  }
+
+  private final ReloadableState<Snapshot> snapshot = new ReloadableState<>(Snapshot.EMPTY);
+
+  private @Autowired MarketRepository<Market> marketRepo;
+  private @Autowired DtoFactory dtoFactory;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // reloading is triggered after the commit of another transaction
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Returns the current markets and their version. Use a single snapshot for everything that has
+   * to be consistent, e.g. the version used as ETag and the markets in the response.
+   */
+  public Snapshot getSnapshot() {
+    return snapshot.get();
+  }
+
+  /**
+   * Returns the market with the given slug if there is one.
+   */
+  public Optional<Entry> get(String slug) {
+    return snapshot.get().get(slug);
+  }
+
+  /**
+   * Returns all markets.
+   */
+  public ImmutableCollection<Entry> getAll() {
+    return snapshot.get().getAll();
+  }
+
+  /**
+   * Creates a new DTO of a market, which the caller may modify.
+   */
+  public MarketDto toDto(Entry entry) {
+    MarketDto marketDto = dtoFactory.createDto(MarketDto.class);
+    marketDto.setSlug(entry.getSlug());
+    marketDto.setName(entry.getName());
+    return marketDto;
+  }
+
+  /**
+   * Loads all markets from the database and replaces the snapshot.
+   */
+  @Scheduled(fixedDelayString = "${reviewcommunity.market.reload-interval:60000}",
+      initialDelayString = "${reviewcommunity.market.reload-interval:60000}")
+  public void reload() {
+    snapshot.reload(() -> transactionTemplate.execute(status -> {
+      final ImmutableMap.Builder<String, Entry> builder = ImmutableMap.builder();
+      final Hasher hasher = Hashing.murmur3_128().newHasher();
+      // not from the query cache, which doesn't see markets created on other instances
+      final List<Market> markets = Lists.newArrayList(marketRepo.findAll());
+      // sorted, so that the hash doesn't depend on the order in which the database returns them
+      markets.sort(Comparator.comparing(Market::getSlug));
+      for (Market market : markets) {
+        builder.put(market.getSlug(),
+            new Entry(market.getPk().getId(), market.getSlug(), market.getName()));
+        hasher.putUnencodedChars(market.getPk().getId()).putChar('\0')
+            .putUnencodedChars(market.getSlug()).putChar('\0')
+            .putUnencodedChars(Strings.nullToEmpty(market.getName())).putChar('\0');
+      }
+      return new Snapshot(builder.build(), hasher.hash().asLong());
+    }));
+    log.info("Loaded {} markets", snapshot.get().getAll().size());
+  }
+
+  @Override
+  public void onEntityUpdate(Market market) {
+    ServiceUtil.afterCommit(this::reload);
+  }
+
+}
@@ -2,7 +2,6 @@ package com.xinra.reviewcommunity.service;
 
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Streams;
 import com.xinra.reviewcommunity.entity.Market;
 import com.xinra.reviewcommunity.repo.MarketRepository;
 import com.xinra.reviewcommunity.shared.dto.MarketDto;
@@ -12,6 +11,7 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
@@ -29,32 +29,34 @@ public class MarketService extends AbstractService implements
   }
   
   private @Autowired MarketRepository<Market> marketRepo;
-  
-  private MarketDto toDto(Market market) {
-    MarketDto marketDto = dtoFactory.createDto(MarketDto.class);
-    marketDto.setSlug(market.getSlug());
-    marketDto.setName(market.getName());
-    return marketDto;
-  }
+  private @Autowired MarketRegistry marketRegistry;
 
   /**
-   * Returns the market with the given slug.
+   * Returns the market with the given slug. This doesn't access the database.
    * @throws MarketNotFoundException if there is no market with the given slug
    */
+  @Transactional(propagation = Propagation.SUPPORTS)
   public MarketDto getBySlug(String slug) {
-    Market market = marketRepo.findBySlug(slug);
-    if (market == null) {
-      throw new MarketNotFoundException(slug);
-    }
-    return toDto(market);
+    return marketRegistry.toDto(marketRegistry.get(slug)
+        .orElseThrow(() -> new MarketNotFoundException(slug)));
+  }
+  
+  /**
+   * Returns the current markets and their version, which changes whenever a market changes. This
+   * doesn't access the database.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public MarketRegistry.Snapshot getMarkets() {
+    return marketRegistry.getSnapshot();
   }
   
   /**
-   * Returns a collection of all markets.
+   * Returns a collection of the given markets. This doesn't access the database.
    */
-  public ImmutableCollection<MarketDto> getAllMarkets() {
-    return Streams.stream(marketRepo.findAllCached())
-      .map(this::toDto)
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public ImmutableCollection<MarketDto> getAllMarkets(MarketRegistry.Snapshot markets) {
+    return markets.getAll().stream()
+      .map(marketRegistry::toDto)
       .collect(ImmutableList.toImmutableList());
   }
   
@@ -74,7 +76,7 @@ public class MarketService extends AbstractService implements
   @Override
   public void onApplicationEvent(ContextRefreshedEvent event) {
     log.info("Start building market cache");
-    // todo
+    marketRegistry.reload();
     log.info("Finished building market cache");
   }
 
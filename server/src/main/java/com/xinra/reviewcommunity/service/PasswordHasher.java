@@ -0,0 +1,200 @@
+package com.xinra.reviewcommunity.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hashes and verifies passwords with BCrypt on a dedicated executor with a bounded queue (see
+ * {@link ServiceConfiguration#PASSWORD_EXECUTOR}). BCrypt is deliberately slow, so a burst of
+ * logins would otherwise occupy all request threads. The calling thread still waits for the
+ * result, but only a few hashes are computed at once. Callers are rejected right away if the
+ * queue is full, and they wait at most for a timeout.
+ *
+ * <p>Concurrent verifications of the same username, password and hash (e.g. a client retrying a
+ * login) share one computation.
+ */
+@Component
+public class PasswordHasher implements PublicMetrics {
+
+  /**
+   * Thrown if the queue of the executor is full. This is an {@link AuthenticationServiceException}
+   * so that it is passed to the authentication failure handler.
+   */
+  public static class PasswordHasherBusyException extends AuthenticationServiceException {
+    private static final long serialVersionUID = 1L;
+
+    private PasswordHasherBusyException() {
+      super("Too many passwords are being checked. Try again later");
+    }
+  }
+
+  @RequiredArgsConstructor
+  private static class Verification {
+    private final String password;
+    private final String hash;
+    private final CompletableFuture<Boolean> result;
+
+    private boolean isFor(String password, String hash) {
+      // constant time comparison, so that waiting for an in-flight verification doesn't leak
+      // how much of the password matches
+      return this.hash.equals(hash)
+          && MessageDigest.isEqual(this.password.getBytes(StandardCharsets.UTF_8),
+              password.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private final ConcurrentMap<String, Verification> inFlight = new ConcurrentHashMap<>();
+
+  private final LongAdder numComputed = new LongAdder();
+  private final LongAdder computeNanos = new LongAdder();
+  private final AtomicLong maxComputeNanos = new AtomicLong();
+  private final LongAdder numRejected = new LongAdder();
+  private final LongAdder numTimedOut = new LongAdder();
+  private final LongAdder numDeduplicated = new LongAdder();
+
+  private @Autowired @Qualifier(ServiceConfiguration.PASSWORD_EXECUTOR)
+      ThreadPoolTaskExecutor executor;
+  private @Value("${reviewcommunity.password.bcrypt-cost:10}") int cost;
+  private @Value("${reviewcommunity.password.timeout:10000}") long timeout;
+
+  /**
+   * Hashes a password with the configured cost.
+   * @throws PasswordHasherBusyException if too many passwords are being hashed or verified
+   */
+  public String hash(@NonNull String password) {
+    final CompletableFuture<String> result = new CompletableFuture<>();
+    submit(result, () -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    return await(result);
+  }
+
+  /**
+   * Checks a password against the hash of a user.
+   * @throws PasswordHasherBusyException if too many passwords are being hashed or verified
+   */
+  public boolean verify(@NonNull String username, @NonNull String password, @NonNull String hash) {
+    final Verification existing = inFlight.get(username);
+    if (existing != null && existing.isFor(password, hash)) {
+      numDeduplicated.increment();
+      return await(existing.result);
+    }
+
+    final Verification verification
+        = new Verification(password, hash, new CompletableFuture<>());
+    // if another verification of this user is in flight already, this one is not shared
+    final boolean shared = inFlight.putIfAbsent(username, verification) == null;
+    try {
+      // completes the result even if rejected, so threads that share it don't wait forever
+      submit(verification.result, () -> BCrypt.checkpw(password, hash));
+      return await(verification.result);
+    } finally {
+      if (shared) {
+        inFlight.remove(username, verification);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the hash has been computed with a cost other than the configured one and
+   * should be replaced once the password is known.
+   */
+  public boolean needsRehash(@NonNull String hash) {
+    // format is $2a$<cost>$<salt and hash>
+    try {
+      return Integer.parseInt(hash.substring(4, 6)) != cost;
+    } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+      return true;
+    }
+  }
+
+  /**
+   * Computes the result on the executor. If the executor rejects the computation, the result is
+   * completed with a {@link PasswordHasherBusyException}.
+   */
+  private <T> void submit(CompletableFuture<T> result, Supplier<T> computation) {
+    try {
+      executor.execute(() -> {
+        final long start = System.nanoTime();
+        try {
+          result.complete(computation.get());
+        } catch (RuntimeException ex) {
+          result.completeExceptionally(ex);
+        } finally {
+          final long nanos = System.nanoTime() - start;
+          numComputed.increment();
+          computeNanos.add(nanos);
+          maxComputeNanos.accumulateAndGet(nanos, Math::max);
+        }
+      });
+    } catch (TaskRejectedException ex) {
+      numRejected.increment();
+      result.completeExceptionally(new PasswordHasherBusyException());
+    }
+  }
+
+  /**
+   * Waits for a result at most for the configured timeout.
+   * @throws PasswordHasherBusyException if the result isn't available in time
+   */
+  private <T> T await(CompletableFuture<T> result) {
+    try {
+      return result.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      numTimedOut.increment();
+      throw new PasswordHasherBusyException();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for BCrypt", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof PasswordHasherBusyException) {
+        // not rethrown as is, because the result may be shared by multiple threads
+        throw new PasswordHasherBusyException();
+      }
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    final long computed = numComputed.sum();
+    final Collection<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>("password.queue.size",
+        executor.getThreadPoolExecutor().getQueue().size()));
+    metrics.add(new Metric<>("password.active", executor.getActiveCount()));
+    metrics.add(new Metric<>("password.computed", computed));
+    metrics.add(new Metric<>("password.rejected", numRejected.sum()));
+    metrics.add(new Metric<>("password.timed-out", numTimedOut.sum()));
+    metrics.add(new Metric<>("password.deduplicated", numDeduplicated.sum()));
+    metrics.add(new Metric<>("password.latency.mean-millis",
+        computed == 0 ? 0 : computeNanos.sum() / computed / 1000000.0));
+    metrics.add(new Metric<>("password.latency.max-millis",
+        maxComputeNanos.get() / 1000000.0));
+    return metrics;
+  }
+
+}
@@ -0,0 +1,325 @@
+package com.xinra.reviewcommunity.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.xinra.nucleus.common.ContextHolder;
+import com.xinra.reviewcommunity.Context;
+import com.xinra.reviewcommunity.entity.Barcode;
+import com.xinra.reviewcommunity.entity.Brand;
+import com.xinra.reviewcommunity.entity.Category;
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.BarcodeRepository;
+import com.xinra.reviewcommunity.repo.BrandRepository;
+import com.xinra.reviewcommunity.repo.CategoryRepository;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import com.xinra.reviewcommunity.shared.dto.CreateProductDto;
+import com.xinra.reviewcommunity.shared.dto.ProductImportErrorDto;
+import com.xinra.reviewcommunity.shared.dto.ProductImportReportDto;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Imports products in bulk. In contrast to {@link ProductService#createProduct(CreateProductDto)}
+ * the rows are processed in chunks: Each chunk is inserted in one transaction (using JDBC batches),
+ * barcodes are checked with one query per chunk and serials are reserved for the whole chunk at
+ * once. Products are not queued for indexing but indexed in bulk after all chunks have been
+ * inserted.
+ */
+@Slf4j
+@Service
+@Transactional
+public class ProductImportService extends AbstractService {
+
+  /**
+   * A row that has passed all checks that don't require the database.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  public static class ImportRow {
+    private final int rowNumber;
+    private final CreateProductDto product;
+  }
+
+  /**
+   * The result of importing one chunk. Imported products have consecutive serials.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  public static class ChunkResult {
+    private final int firstSerial;
+    private final int numImported;
+    private final List<ProductImportErrorDto> errors;
+  }
+
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired CategoryRepository<Category> categoryRepo;
+  private @Autowired BrandRepository<Brand> brandRepo;
+  private @Autowired BarcodeRepository<Barcode> barcodeRepo;
+  private @Autowired ProductIndexQueue indexQueue;
+  private @Autowired BarcodeIndex barcodeIndex;
+  private @Autowired CategoryTree categoryTree;
+  private @Autowired ProductSuggester productSuggester;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired ContextHolder<Context> contextHolder;
+  private @Autowired ObjectMapper objectMapper;
+  private @Autowired Validator validator;
+  private @PersistenceContext EntityManager entityManager;
+  private @Value("${reviewcommunity.import.chunk-size:500}") int chunkSize;
+  private @Value("${reviewcommunity.import.max-errors:1000}") int maxErrors;
+
+  /**
+   * Imports products from newline delimited JSON, i.e. one {@link CreateProductDto} per line.
+   * Blank lines are ignored. Rows are read one by one, so the input may be arbitrarily large.
+   * Invalid rows are skipped and reported, the others are imported.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public ProductImportReportDto importProducts(@NonNull BufferedReader reader) throws IOException {
+
+    final ProductImportService self = serviceProvider.getService(ProductImportService.class);
+    final ObjectReader rowReader = objectMapper.readerFor(CreateProductDto.class);
+    final Map<Integer, String> categoryIds = self.getCategoryIdsBySerial();
+    final Map<Integer, String> brandIds = self.getBrandIdsBySerial();
+
+    final ProductImportReportDto report = dtoFactory.createDto(ProductImportReportDto.class);
+    report.setErrors(new ArrayList<>());
+
+    // Ranges of imported serials [first, last]. Used for indexing afterwards.
+    final List<int[]> serialRanges = new ArrayList<>();
+    List<ImportRow> chunk = new ArrayList<>(chunkSize);
+    int rowNumber = 0;
+    String line;
+
+    indexQueue.suspend();
+    try {
+      while ((line = reader.readLine()) != null) {
+        rowNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final CreateProductDto product;
+        try {
+          product = rowReader.readValue(line);
+        } catch (JsonProcessingException ex) {
+          addError(report, rowNumber, "Malformed row: " + ex.getOriginalMessage());
+          continue;
+        }
+
+        final String error = validate(product, categoryIds, brandIds);
+        if (error != null) {
+          addError(report, rowNumber, error);
+          continue;
+        }
+
+        chunk.add(new ImportRow(rowNumber, product));
+        if (chunk.size() == chunkSize) {
+          importChunk(self, chunk, categoryIds, brandIds, report, serialRanges);
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+      if (!chunk.isEmpty()) {
+        importChunk(self, chunk, categoryIds, brandIds, report, serialRanges);
+      }
+    } finally {
+      indexQueue.resume();
+    }
+
+    for (int[] range : serialRanges) {
+      self.index(range[0], range[1]);
+    }
+
+    log.info("Imported {} products, {} rows failed", report.getNumImported(),
+        report.getNumFailed());
+
+    // errors of a chunk are only known when it is inserted, after later rows have been parsed
+    report.getErrors().sort(Comparator.comparingInt(ProductImportErrorDto::getRow));
+    return report;
+  }
+
+  private void importChunk(ProductImportService self, List<ImportRow> chunk,
+      Map<Integer, String> categoryIds, Map<Integer, String> brandIds,
+      ProductImportReportDto report, List<int[]> serialRanges) {
+
+    final ChunkResult result;
+    try {
+      result = self.insertChunk(chunk, categoryIds, brandIds);
+    } catch (RuntimeException ex) {
+      log.error("Importing rows {} to {} failed", chunk.get(0).getRowNumber(),
+          chunk.get(chunk.size() - 1).getRowNumber(), ex);
+      chunk.forEach(row -> addError(report, row.getRowNumber(), "Internal error"));
+      return;
+    }
+
+    result.getErrors().forEach(error -> addError(report, error.getRow(), error.getMessage()));
+    if (result.getNumImported() > 0) {
+      report.setNumImported(report.getNumImported() + result.getNumImported());
+      serialRanges.add(new int[] {result.getFirstSerial(),
+          result.getFirstSerial() + result.getNumImported() - 1});
+    }
+  }
+
+  private void addError(ProductImportReportDto report, int rowNumber, String message) {
+    report.setNumFailed(report.getNumFailed() + 1);
+    if (report.getErrors().size() < maxErrors) {
+      ProductImportErrorDto error = dtoFactory.createDto(ProductImportErrorDto.class);
+      error.setRow(rowNumber);
+      error.setMessage(message);
+      report.getErrors().add(error);
+    }
+  }
+
+  /**
+   * Returns an error message if the row is invalid or {@code null} otherwise.
+   */
+  private String validate(CreateProductDto product, Map<Integer, String> categoryIds,
+      Map<Integer, String> brandIds) {
+
+    final Set<ConstraintViolation<CreateProductDto>> violations = validator.validate(product);
+    if (!violations.isEmpty()) {
+      return violations.stream()
+          .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+          .sorted()
+          .collect(Collectors.joining(", "));
+    }
+    if (!categoryIds.containsKey(product.getCategorySerial())) {
+      return "There is no category with serial " + product.getCategorySerial();
+    }
+    if (product.getBrandSerial() != 0 && !brandIds.containsKey(product.getBrandSerial())) {
+      return "There is no brand with serial " + product.getBrandSerial();
+    }
+    return null;
+  }
+
+  /**
+   * Returns the ids of all categories by their serials.
+   */
+  @Transactional(readOnly = true)
+  public Map<Integer, String> getCategoryIdsBySerial() {
+    return toMap(categoryRepo.findAllSerialsAndIds());
+  }
+
+  /**
+   * Returns the ids of all brands of the current market by their serials.
+   */
+  @Transactional(readOnly = true)
+  public Map<Integer, String> getBrandIdsBySerial() {
+    return toMap(brandRepo.findAllSerialsAndIds());
+  }
+
+  private static Map<Integer, String> toMap(Collection<Object[]> serialsAndIds) {
+    final Map<Integer, String> map = new HashMap<>();
+    serialsAndIds.forEach(row -> map.put((Integer) row[0], (String) row[1]));
+    return map;
+  }
+
+  /**
+   * Inserts a chunk of rows that have already been validated by
+   * {@link #importProducts(BufferedReader)}. Rows with barcodes that already exist (or occur
+   * multiple times in the chunk) are skipped.
+   */
+  public ChunkResult insertChunk(List<ImportRow> rows, Map<Integer, String> categoryIds,
+      Map<Integer, String> brandIds) {
+
+    final Set<String> codes = rows.stream()
+        .map(row -> row.getProduct().getBarcode())
+        .filter(code -> code != null)
+        .collect(Collectors.toSet());
+    final Set<String> existingCodes = codes.isEmpty()
+        ? new HashSet<>() : new HashSet<>(barcodeRepo.findExistingCodes(codes));
+
+    final List<ProductImportErrorDto> errors = new ArrayList<>();
+    final List<CreateProductDto> accepted = new ArrayList<>(rows.size());
+    for (ImportRow row : rows) {
+      final String code = row.getProduct().getBarcode();
+      // add() returns false if the code is already in the set
+      if (code != null && !existingCodes.add(code)) {
+        ProductImportErrorDto error = dtoFactory.createDto(ProductImportErrorDto.class);
+        error.setRow(row.getRowNumber());
+        error.setMessage("The barcode " + code + " already exists");
+        errors.add(error);
+      } else {
+        accepted.add(row.getProduct());
+      }
+    }
+
+    if (accepted.isEmpty()) {
+      return new ChunkResult(0, 0, errors);
+    }
+
+    final int firstSerial = serviceProvider.getService(SerialService.class)
+        .reserveSerials(Product.class.getName(), accepted.size());
+
+    final String marketId = marketRegistry.get(contextHolder.get().getMarket().get().getSlug())
+        .get().getId();
+    final Map<Integer, Integer> numProductsByCategory = new HashMap<>();
+    int serial = firstSerial;
+    for (CreateProductDto createProductDto : accepted) {
+      Product product = entityFactory.createEntity(Product.class);
+      product.setName(createProductDto.getName());
+      product.setDescription(createProductDto.getDescription());
+      product.setCategory(entityManager.getReference(Category.class,
+          categoryIds.get(createProductDto.getCategorySerial())));
+      if (createProductDto.getBrandSerial() != 0) {
+        product.setBrand(entityManager.getReference(Brand.class,
+            brandIds.get(createProductDto.getBrandSerial())));
+      }
+      product.setSerial(serial++);
+      entityManager.persist(product);
+      numProductsByCategory.merge(createProductDto.getCategorySerial(), 1, Integer::sum);
+      // brands are loaded at most once per chunk as the references are managed
+      productSuggester.add(marketId, product.getSerial(), product.getName(),
+          product.getBrand() == null ? null : product.getBrand().getName(), product.getScore());
+
+      if (createProductDto.getBarcode() != null) {
+        Barcode barcode = entityFactory.createEntity(Barcode.class);
+        barcode.setCode(createProductDto.getBarcode());
+        barcode.setProduct(product);
+        entityManager.persist(barcode);
+        barcodeIndex.put(marketId, barcode.getCode(), product.getSerial());
+      }
+    }
+
+    for (Map.Entry<Integer, Integer> entry : numProductsByCategory.entrySet()) {
+      categoryTree.addProducts(marketId, entry.getKey(), entry.getValue());
+    }
+
+    return new ChunkResult(firstSerial, accepted.size(), errors);
+  }
+
+  /**
+   * Adds the products with serials in the given range to the search index.
+   */
+  @Transactional(readOnly = true)
+  public void index(int firstSerial, int lastSerial) {
+    final FullTextEntityManager fullTextEntityManager
+        = Search.getFullTextEntityManager(entityManager);
+    productRepo.findBySerialRange(firstSerial, lastSerial).forEach(fullTextEntityManager::index);
+    fullTextEntityManager.flushToIndexes();
+  }
+
+}
@@ -0,0 +1,196 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.collect.Iterables;
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.entity.ProductIndexingInterceptor;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Updates the search index of products asynchronously. Automatic indexing of added and updated
+ * products is disabled (see {@link ProductIndexingInterceptor}). Instead, changed products are
+ * queued after commit and indexed periodically. A product that changes multiple times between two
+ * flushes is only indexed once.
+ *
+ * <p>If too many products are pending, the committing thread flushes the queue itself, which slows
+ * down writers until the index has caught up.
+ */
+@Slf4j
+@Component
+public class ProductIndexQueue implements Product.UpdateListener, PublicMetrics {
+
+  private static final int BATCH_SIZE = 100;
+
+  /**
+   * IDs of pending products mapped to the time (in milliseconds) they have first been queued.
+   */
+  private final ConcurrentMap<String, Long> pending = new ConcurrentHashMap<>();
+  private final ThreadLocal<Boolean> suspended = ThreadLocal.withInitial(() -> false);
+  
+  /**
+   * Start time of the last successful flush. Products queued before have been indexed.
+   */
+  private volatile long lastFlush = System.currentTimeMillis();
+  
+  /**
+   * While a flush is running, the time the oldest product of its batch has been queued.
+   */
+  private volatile long oldestFlushing = Long.MAX_VALUE;
+
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private @PersistenceContext EntityManager entityManager;
+  private @Value("${reviewcommunity.search.max-pending:10000}") int maxPending;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // flushes may be triggered after the commit of another transaction
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Products that are changed by the current thread are not queued until {@link #resume()} is
+   * called. Use this if the products are indexed explicitly afterwards.
+   */
+  public void suspend() {
+    suspended.set(true);
+  }
+
+  public void resume() {
+    suspended.remove();
+  }
+
+  @Override
+  public void onEntityUpdate(Product product) {
+    if (suspended.get()) {
+      return;
+    }
+    final String id = product.getPk().getId();
+    ServiceUtil.afterCommit(() -> add(id));
+  }
+
+  private void add(String id) {
+    pending.putIfAbsent(id, System.currentTimeMillis());
+    flushIfFull();
+  }
+
+  /**
+   * Queues products that may have changed since the given time (in milliseconds), e.g. while the
+   * application was not running. They count as waiting since then.
+   */
+  public void addAll(Collection<String> ids, long changedSince) {
+    for (List<String> batch : Iterables.partition(ids, BATCH_SIZE)) {
+      batch.forEach(id -> pending.merge(id, changedSince, Math::min));
+      flushIfFull();
+    }
+  }
+
+  private void flushIfFull() {
+    if (pending.size() > maxPending) {
+      log.debug("More than {} products waiting to be indexed. Flushing synchronously.",
+          maxPending);
+      flush();
+    }
+  }
+
+  /**
+   * Indexes all pending products.
+   */
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${reviewcommunity.search.flush-interval:1000}")
+  public synchronized void flush() {
+    final long start = System.currentTimeMillis();
+    if (pending.isEmpty()) {
+      lastFlush = start;
+      return;
+    }
+
+    // set before products are taken from the queue, so they are always accounted for
+    oldestFlushing = getIndexedUntil();
+    final Map<String, Long> batch = new HashMap<>();
+    for (String id : pending.keySet()) {
+      final Long queuedAt = pending.remove(id);
+      if (queuedAt != null) {
+        batch.put(id, queuedAt);
+      }
+    }
+
+    try {
+      transactionTemplate.execute(status -> {
+        index(batch.keySet());
+        return null;
+      });
+    } catch (RuntimeException ex) {
+      log.error("Indexing {} products failed. Will retry.", batch.size(), ex);
+      batch.forEach(pending::putIfAbsent);
+      oldestFlushing = Long.MAX_VALUE;
+      return;
+    }
+
+    lastFlush = start;
+    oldestFlushing = Long.MAX_VALUE;
+    log.debug("Indexed {} products", batch.size());
+  }
+
+  private void index(Collection<String> ids) {
+    final FullTextEntityManager fullTextEntityManager
+        = Search.getFullTextEntityManager(entityManager);
+    for (List<String> batch : Iterables.partition(ids, BATCH_SIZE)) {
+      // deleted products are not found but have already been removed from the index
+      productRepo.findByIds(new ArrayList<>(batch)).forEach(fullTextEntityManager::index);
+      fullTextEntityManager.flushToIndexes();
+      fullTextEntityManager.clear();
+    }
+  }
+
+  /**
+   * Returns the time (in milliseconds) before which all queued products have been indexed.
+   */
+  public long getIndexedUntil() {
+    final long oldestPending
+        = pending.values().stream().mapToLong(Long::longValue).min().orElse(Long.MAX_VALUE);
+    return Math.min(Math.min(lastFlush, oldestFlushing), oldestPending);
+  }
+
+  /**
+   * Returns the time in milliseconds the oldest pending product has been waiting to be indexed.
+   */
+  public long getIndexLag() {
+    final long now = System.currentTimeMillis();
+    return pending.values().stream().mapToLong(queuedAt -> now - queuedAt).max().orElse(0);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    final Collection<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>("search.index.pending", pending.size()));
+    metrics.add(new Metric<>("search.index.lag", getIndexLag()));
+    return metrics;
+  }
+
+}
@@ -1,5 +1,7 @@
 package com.xinra.reviewcommunity.service;
 
+import com.xinra.nucleus.common.ContextHolder;
+import com.xinra.reviewcommunity.Context;
 import com.xinra.reviewcommunity.entity.Brand;
 import com.xinra.reviewcommunity.entity.Category;
 import com.xinra.reviewcommunity.entity.Product;
@@ -10,9 +12,7 @@ import com.xinra.reviewcommunity.shared.dto.BrandDto;
 import com.xinra.reviewcommunity.shared.dto.CreateProductDto;
 import com.xinra.reviewcommunity.shared.dto.ProductDto;
 import com.xinra.reviewcommunity.shared.dto.SerialDto;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -28,6 +28,10 @@ public class ProductService extends AbstractService {
   private @Autowired ProductRepository<Product> productRepo;
   private @Autowired CategoryRepository<Category> categoryRepo;
   private @Autowired BrandRepository<Brand> brandRepo;
+  private @Autowired CategoryTree categoryTree;
+  private @Autowired ProductSuggester productSuggester;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired ContextHolder<Context> contextHolder;
 
   /**
    * Creates a new product.
@@ -64,6 +68,9 @@ public class ProductService extends AbstractService {
     int serial = serviceProvider.getService(SerialService.class).getNextSerial(Product.class);
     product.setSerial(serial);
     product = productRepo.save(product);
+    categoryTree.addProducts(getMarketId(), category.getSerial(), 1);
+    productSuggester.add(getMarketId(), serial, product.getName(),
+        product.getBrand() == null ? null : product.getBrand().getName(), product.getScore());
     
     if (createProductDto.getBarcode() != null) {
       // this must be called after saving the product
@@ -78,6 +85,10 @@ public class ProductService extends AbstractService {
     return serialDto;
   }
 
+  private String getMarketId() {
+    return marketRegistry.get(contextHolder.get().getMarket().get().getSlug()).get().getId();
+  }
+
   /**
    * Returns the product with the given Serial.
    */
@@ -114,25 +125,11 @@ public class ProductService extends AbstractService {
       throw new SerialNotFoundException(Category.class, categorySerial);
     }
     
-    Set<String> categoryIds = getTransitiveCategoryIds(category.getPk().getId());
-    
-    return productRepo.findByCategoryIds(categoryIds).stream()
+    return productRepo.findByAncestorCategoryId(category.getPk().getId()).stream()
       .map(this::toDto)
       .collect(Collectors.toList());
   }
   
-  /**
-   * Returns the IDs of all categories that are included by the given one (itself and all transitive
-   * children).
-   */
-  private Set<String> getTransitiveCategoryIds(String categoryId) {
-    Set<String> transitiveCategoryIds = new HashSet<>();
-    transitiveCategoryIds.add(categoryId);
-    categoryRepo.getIdsByParentId(categoryId).forEach(childId ->
-        transitiveCategoryIds.addAll(getTransitiveCategoryIds(childId)));
-    return transitiveCategoryIds;
-  }
-
   /**
    * Converts a product entity to a DTO.
    */
@@ -145,6 +142,13 @@ public class ProductService extends AbstractService {
     productDto.setDescription(product.getDescription());
     productDto.setNumRatings(product.getNumRatings());
     productDto.setAvgRating(product.getAvgRating());
+    productDto.setRatingHistogram(new int[] {
+        product.getNumOneStarRatings(),
+        product.getNumTwoStarRatings(),
+        product.getNumThreeStarRatings(),
+        product.getNumFourStarRatings(),
+        product.getNumFiveStarRatings()
+    });
 
     if (product.getBrand() != null) {
       BrandDto brandDto = dtoFactory.createDto(BrandDto.class);
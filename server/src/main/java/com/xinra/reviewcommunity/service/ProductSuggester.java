@@ -0,0 +1,292 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Suggests products whose name or brand starts with a prefix, e.g. while the user is typing a
+ * search query. The best suggestions (by the score of the product) for every prefix of every word
+ * of all product and brand names are precomputed in memory per market, so a prefix is answered
+ * with a single lookup and without accessing the database or the search index.
+ *
+ * <p>Products are added after commit when they are created and scores are updated when they
+ * change. Only the lists of the prefixes of the changed product are updated. A periodic reload
+ * picks up changes that don't go through the services and keeps changes that are applied while
+ * it is in progress (see {@link ReloadableState}).
+ */
+@Slf4j
+@Component
+public class ProductSuggester {
+
+  private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  /**
+   * Separates the word from the serial in the keys of the word map. Sorts before all characters
+   * that may occur in words.
+   */
+  private static final char KEY_SEPARATOR = '\0';
+
+  /**
+   * Number of suggestions that are kept per prefix. Also the maximum number of suggestions that
+   * are returned.
+   */
+  private static final int MAX_SUGGESTIONS = 100;
+
+  private static final Comparator<Suggestion> BY_SCORE = Comparator
+      .comparingDouble(Suggestion::getScore).reversed()
+      .thenComparingInt(Suggestion::getSerial);
+
+  /**
+   * Suggestions are immutable, so that lists that are being read are never reordered. A new
+   * suggestion replaces the old one when the score changes.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  public static class Suggestion {
+    private final int serial;
+    private final String name;
+    private final Set<String> words;
+    private final double score;
+
+    private boolean matches(String prefixWord) {
+      return words.stream().anyMatch(word -> word.startsWith(prefixWord));
+    }
+  }
+
+  /**
+   * The suggestions of a market. Changes are serialized (see {@link ReloadableState}). Only
+   * {@link #top} is read concurrently and its lists are immutable.
+   */
+  private static class Market {
+
+    /**
+     * Maps word + {@link #KEY_SEPARATOR} + serial to the suggestion of a product that contains the
+     * word. Used to compute the list of a prefix again if a listed product falls behind.
+     */
+    private final NavigableMap<String, Suggestion> words = new TreeMap<>();
+    private final Map<Integer, Suggestion> bySerial = new HashMap<>();
+
+    /**
+     * Maps every prefix of every word to the best suggestions that have a word with this prefix,
+     * best first. Lists with less than {@link #MAX_SUGGESTIONS} elements are complete.
+     */
+    private final Map<String, List<Suggestion>> top = new ConcurrentHashMap<>();
+
+    private static Market of(List<Suggestion> suggestions) {
+      final Market market = new Market();
+      final Map<String, List<Suggestion>> byPrefix = new HashMap<>();
+      for (Suggestion suggestion : suggestions) {
+        market.index(suggestion);
+        for (String prefix : prefixes(suggestion)) {
+          byPrefix.computeIfAbsent(prefix, p -> new ArrayList<>()).add(suggestion);
+        }
+      }
+      byPrefix.forEach((prefix, matches) -> market.top.put(prefix, rank(matches.stream())));
+      return market;
+    }
+
+    /**
+     * Adds a suggestion or replaces the one of the same product.
+     */
+    private void put(Suggestion suggestion) {
+      final Suggestion old = bySerial.get(suggestion.getSerial());
+      final Set<String> prefixes = prefixes(suggestion);
+      if (old != null) {
+        for (String word : old.getWords()) {
+          words.remove(word + KEY_SEPARATOR + old.getSerial());
+        }
+        prefixes.addAll(prefixes(old));
+      }
+      index(suggestion);
+      for (String prefix : prefixes) {
+        updateTop(prefix, old, suggestion);
+      }
+    }
+
+    private void index(Suggestion suggestion) {
+      bySerial.put(suggestion.getSerial(), suggestion);
+      for (String word : suggestion.getWords()) {
+        words.put(word + KEY_SEPARATOR + suggestion.getSerial(), suggestion);
+      }
+    }
+
+    private void updateTop(String prefix, Suggestion old, Suggestion updated) {
+      final List<Suggestion> current = top.getOrDefault(prefix, Collections.emptyList());
+      final boolean listed = current.stream().anyMatch(s -> s.getSerial() == updated.getSerial());
+      final boolean matches = updated.matches(prefix);
+
+      if (listed && current.size() >= MAX_SUGGESTIONS
+          && (!matches || BY_SCORE.compare(updated, old) > 0)) {
+        // an unlisted product may take its place
+        top.put(prefix, rank(words.subMap(prefix, true, prefix + Character.MAX_VALUE, false)
+            .values().stream()));
+        return;
+      }
+
+      final List<Suggestion> updatedList = new ArrayList<>(current);
+      updatedList.removeIf(s -> s.getSerial() == updated.getSerial());
+      if (matches) {
+        updatedList.add(updated);
+      }
+      if (updatedList.isEmpty()) {
+        top.remove(prefix);
+      } else {
+        top.put(prefix, rank(updatedList.stream()));
+      }
+    }
+  }
+
+  private final ReloadableState<ConcurrentMap<String, Market>> markets
+      = new ReloadableState<>(new ConcurrentHashMap<>());
+
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // reloading may be triggered while another transaction is active
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Returns the products of a market with the highest scores that have a word in their name or
+   * brand that starts with each word of the prefix.
+   *
+   * <p>If the prefix has several words, the shortest list of the words is filtered by the others.
+   * The result is exact if that list is complete. Otherwise products that aren't among the best
+   * {@value #MAX_SUGGESTIONS} for any of the words are missing.
+   */
+  public List<Suggestion> suggest(@NonNull String marketId, @NonNull String prefix, int limit) {
+    final Market market = markets.get().get(marketId);
+    final List<String> prefixWords = split(prefix);
+    if (market == null || prefixWords.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // on ties prefer the longest word, which is the most specific one
+    final List<Suggestion> candidates = prefixWords.stream()
+        .sorted(Comparator.comparingInt(String::length).reversed())
+        .map(word -> market.top.getOrDefault(word, Collections.emptyList()))
+        .min(Comparator.comparingInt(List::size))
+        .get();
+
+    return candidates.stream()
+        .filter(candidate -> prefixWords.stream().allMatch(candidate::matches))
+        .limit(Math.min(limit, MAX_SUGGESTIONS))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Adds a product once the current transaction commits.
+   */
+  public void add(String marketId, int serial, String name, String brandName, double score) {
+    final Suggestion suggestion = createSuggestion(serial, name, brandName, score);
+    ServiceUtil.afterCommit(() -> markets.change(current ->
+        current.computeIfAbsent(marketId, id -> new Market()).put(suggestion)));
+  }
+
+  /**
+   * Updates the score of a product once the current transaction commits.
+   */
+  public void setScore(String marketId, int serial, double score) {
+    ServiceUtil.afterCommit(() -> markets.change(current -> {
+      final Market market = current.get(marketId);
+      final Suggestion suggestion = market == null ? null : market.bySerial.get(serial);
+      if (suggestion != null) {
+        market.put(new Suggestion(serial, suggestion.getName(), suggestion.getWords(), score));
+      }
+    }));
+  }
+
+  /**
+   * Loads all products from the database and replaces the suggestions of all markets.
+   */
+  @Scheduled(fixedDelayString = "${reviewcommunity.suggest.reload-interval:600000}",
+      initialDelayString = "${reviewcommunity.suggest.reload-interval:600000}")
+  public void reload() {
+    markets.reload(() -> transactionTemplate.execute(status -> {
+      final Map<String, List<Suggestion>> suggestionsByMarket = new HashMap<>();
+      final List<Object[]> rows = productRepo.findAllForSuggestions();
+      for (Object[] row : rows) {
+        suggestionsByMarket.computeIfAbsent((String) row[0], id -> new ArrayList<>()).add(
+            createSuggestion((int) row[1], (String) row[2], (String) row[3], (double) row[4]));
+      }
+      final ConcurrentMap<String, Market> loaded = new ConcurrentHashMap<>();
+      suggestionsByMarket.forEach((marketId, suggestions) ->
+          loaded.put(marketId, Market.of(suggestions)));
+      log.info("Loaded suggestions for {} products", rows.size());
+      return loaded;
+    }));
+  }
+
+  private static Suggestion createSuggestion(int serial, String name, String brandName,
+      double score) {
+    final Set<String> words = new HashSet<>(split(name));
+    if (brandName != null) {
+      words.addAll(split(brandName));
+    }
+    return new Suggestion(serial, name, ImmutableSet.copyOf(words), score);
+  }
+
+  /**
+   * Returns all prefixes of all words of a suggestion (a mutable set).
+   */
+  private static Set<String> prefixes(Suggestion suggestion) {
+    final Set<String> prefixes = new HashSet<>();
+    for (String word : suggestion.getWords()) {
+      for (int length = 1; length <= word.length(); length++) {
+        prefixes.add(word.substring(0, length));
+      }
+    }
+    return prefixes;
+  }
+
+  private static List<Suggestion> rank(Stream<Suggestion> suggestions) {
+    return suggestions
+        .distinct()
+        .sorted(BY_SCORE)
+        .limit(MAX_SUGGESTIONS)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private static List<String> split(String text) {
+    final List<String> words = new ArrayList<>(Arrays.asList(
+        WORD_SEPARATOR.split(text.toLowerCase(Locale.ROOT))));
+    words.removeIf(String::isEmpty);
+    return words;
+  }
+
+}
@@ -0,0 +1,142 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Provides a version for each product that changes whenever its reviews or their comments change.
+ * Used as cache validator (ETag) for the product and its review lists.
+ *
+ * <p>Versions are persisted with the product ({@link Product#getContentVersion()}) and incremented
+ * in the transaction that makes the change, so they are the same on all instances and survive
+ * restarts. They are held in memory for a short time, so another instance may still return the
+ * previous version for up to {@code reviewcommunity.product-versions.ttl} milliseconds.
+ *
+ * <p>Changes of vote counts are only written periodically (see {@link ReviewVoteAccumulator}),
+ * but responses of this instance contain them right away. To tell these responses apart, the
+ * version of a product with pending changes also contains a stamp of the last pending change and
+ * an ID of this instance. Stamps are never reused, so a version never stands for different
+ * content. They are only forgotten once no changes of the product are pending anymore.
+ */
+@Component
+public class ProductVersions {
+
+  private @Value("${reviewcommunity.product-versions.max-size:100000}") int maxSize;
+  private @Value("${reviewcommunity.product-versions.ttl:1000}") long ttl;
+  private Cache<String, Long> versions;
+
+  /**
+   * Random, so that stamps of different instances and of this instance before a restart don't
+   * collide.
+   */
+  private final String instanceId = Long.toHexString(new SecureRandom().nextLong());
+  private final AtomicLong lastStamp = new AtomicLong();
+  private final ConcurrentMap<String, Long> pendingStamps = new ConcurrentHashMap<>();
+
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    versions = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+        .build();
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // versions that are changed but not committed by the current transaction must not be cached
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Returns the current version of a product. Must not be called in a transaction that has
+   * changed the product.
+   * @param market slug of the market of the product
+   * @throws SerialNotFoundException if the product doesn't exist
+   */
+  public String get(@NonNull String market, int productSerial) {
+    final String key = key(market, productSerial);
+    final Long stamp = pendingStamps.get(key);
+    final long version = versions.asMap().computeIfAbsent(key, k -> load(market, productSerial));
+    return stamp == null ? Long.toString(version) : version + "." + instanceId + "." + stamp;
+  }
+
+  /**
+   * Increments the version of a product in the current transaction, which must change the
+   * reviews of the product or their comments. This instance returns the new version once the
+   * transaction commits.
+   * @param market slug of the market of the product
+   */
+  public void changed(@NonNull String market, int productSerial) {
+    final String key = key(market, productSerial);
+    ServiceUtil.afterCommit(() -> versions.invalidate(key));
+    productRepo.incrementContentVersion(getMarketId(market), productSerial);
+  }
+
+  /**
+   * Changes the version of a product on this instance only. Call this after a change has been
+   * committed that is included in responses but not written to the product yet.
+   * @param market slug of the market of the product
+   */
+  public void pendingChanged(@NonNull String market, int productSerial) {
+    pendingStamps.put(key(market, productSerial), lastStamp.incrementAndGet());
+  }
+
+  /**
+   * Returns the stamp of the last pending change of a product or {@code null} if there is none.
+   * @param market slug of the market of the product
+   */
+  public Long getPendingStamp(@NonNull String market, int productSerial) {
+    return pendingStamps.get(key(market, productSerial));
+  }
+
+  /**
+   * Forgets the pending changes of a product once the current transaction commits, unless there
+   * have been new ones since the stamp was read. Call this in the transaction that changes the
+   * version if no changes of the product are pending anymore. The stamp must be read before
+   * checking that.
+   * @param market slug of the market of the product
+   * @param stamp see {@link #getPendingStamp(String, int)}
+   */
+  public void pendingWritten(@NonNull String market, int productSerial, Long stamp) {
+    if (stamp != null) {
+      final String key = key(market, productSerial);
+      ServiceUtil.afterCommit(() -> pendingStamps.remove(key, stamp));
+    }
+  }
+
+  private long load(String market, int productSerial) {
+    final Long version = transactionTemplate.execute(status ->
+        productRepo.getContentVersion(getMarketId(market), productSerial));
+    if (version == null) {
+      throw new SerialNotFoundException(Product.class, productSerial);
+    }
+    return version;
+  }
+
+  private String getMarketId(String market) {
+    return marketRegistry.get(market).get().getId();
+  }
+
+  private static String key(String market, int productSerial) {
+    return market + "/" + productSerial;
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.xinra.reviewcommunity.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.NonNull;
+
+/**
+ * In-memory state that is changed in place and replaced as a whole by a periodic reload from the
+ * database. Changes that are applied while a reload is in progress are recorded and replayed onto
+ * the loaded state before it replaces the current one. Otherwise changes that were committed after
+ * the reload read the database would be lost.
+ *
+ * <p>A change that has already been read by the reload is applied twice. That is harmless for
+ * changes that set values. Changes that add to values are counted twice if they were committed
+ * after the recording started but before the database was read, until the next reload.
+ *
+ * <p>Reading the state doesn't block. Changes are serialized.
+ */
+class ReloadableState<T> {
+
+  private volatile T state;
+  private final Object reloadLock = new Object();
+
+  // guarded by this, null if no reload is in progress
+  private List<Consumer<? super T>> changesDuringReload;
+
+  ReloadableState(@NonNull T initialState) {
+    state = initialState;
+  }
+
+  /**
+   * Returns the current state. It may be replaced by a reload at any time.
+   */
+  T get() {
+    return state;
+  }
+
+  /**
+   * Applies a change to the current state, and to the loaded state if a reload is in progress.
+   */
+  synchronized void change(@NonNull Consumer<? super T> change) {
+    change.accept(state);
+    if (changesDuringReload != null) {
+      changesDuringReload.add(change);
+    }
+  }
+
+  /**
+   * Replaces the state with the result of the loader, which is expected to read the database in
+   * a new transaction. Reloads don't run concurrently.
+   */
+  void reload(@NonNull Supplier<T> loader) {
+    synchronized (reloadLock) {
+      synchronized (this) {
+        changesDuringReload = new ArrayList<>();
+      }
+      try {
+        final T loaded = loader.get();
+        synchronized (this) {
+          changesDuringReload.forEach(change -> change.accept(loaded));
+          state = loaded;
+        }
+      } finally {
+        synchronized (this) {
+          changesDuringReload = null;
+        }
+      }
+    }
+  }
+
+}
@@ -2,6 +2,7 @@ package com.xinra.reviewcommunity.service;
 
 import com.xinra.nucleus.common.ContextHolder;
 import com.xinra.reviewcommunity.Context;
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
 import com.xinra.reviewcommunity.entity.Product;
 import com.xinra.reviewcommunity.entity.Review;
 import com.xinra.reviewcommunity.entity.ReviewComment;
@@ -9,29 +10,48 @@ import com.xinra.reviewcommunity.entity.ReviewVote;
 import com.xinra.reviewcommunity.entity.User;
 import com.xinra.reviewcommunity.repo.ProductRepository;
 import com.xinra.reviewcommunity.repo.ReviewCommentRepository;
+import com.xinra.reviewcommunity.repo.ReviewCursor;
+import com.xinra.reviewcommunity.repo.ReviewCursor.InvalidCursorException;
 import com.xinra.reviewcommunity.repo.ReviewRepository;
 import com.xinra.reviewcommunity.repo.ReviewVoteRepository;
 import com.xinra.reviewcommunity.repo.UserRepository;
+import com.xinra.reviewcommunity.service.ReviewVoteAccumulator.VoteDelta;
 import com.xinra.reviewcommunity.shared.OrderBy;
+import com.xinra.reviewcommunity.shared.UserLevel;
 import com.xinra.reviewcommunity.shared.dto.CreateReviewCommentDto;
 import com.xinra.reviewcommunity.shared.dto.CreateReviewDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewCommentDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewDto;
+import com.xinra.reviewcommunity.shared.dto.ReviewPageDto;
 import com.xinra.reviewcommunity.shared.dto.ReviewVoteDto;
 import com.xinra.reviewcommunity.shared.dto.UserDto;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
 @Service
 @Transactional
-public class ReviewService extends AbstractService {
+public class ReviewService extends AbstractService
+    implements ApplicationListener<ContextRefreshedEvent>, Ordered {
 
   private @Autowired ReviewRepository<Review> reviewRepo;
   private @Autowired ReviewCommentRepository<ReviewComment> reviewCommentRepo;
@@ -39,6 +59,11 @@ public class ReviewService extends AbstractService {
   private @Autowired UserRepository<User> userRepo;
   private @Autowired ReviewVoteRepository<ReviewVote> voteRepo;
   private @Autowired ContextHolder<Context> contextHolder;
+  private @Autowired ReviewVoteAccumulator voteAccumulator;
+  private @Autowired ProductVersions productVersions;
+  private @Autowired ProductSuggester productSuggester;
+  private @Autowired MarketRegistry marketRegistry;
+  private @PersistenceContext EntityManager entityManager;
 
   /**
    * Creates a new review.
@@ -67,44 +92,81 @@ public class ReviewService extends AbstractService {
     review.setProduct(product);
     review.setUser(user);
 
-    int numRatings = product.getNumRatings();
-    double avgRatingOld = product.getAvgRating();
-    double avgRatingNew = (numRatings * avgRatingOld + createReviewDto.getRating())
-            / (numRatings + 1);
-
-    product.setNumRatings(numRatings + 1);
-    product.setAvgRating(avgRatingNew);
-    product.setScore(ScoreUtil.fromAverageRating(avgRatingNew, numRatings));
-
     int serial = serviceProvider.getService(SerialService.class)
             .getNextChildSerial(product.getPk(), Product.REVIEW);
     review.setSerial(serial);
     reviewRepo.save(review);
+    addRating(product, review.getRating(), 1);
+    productChanged(productSerial);
 
     log.info("Created Review for product with serial '{}'", productSerial);
   }
 
   /**
-   * Returns a list of all reviews.
+   * Returns a page of reviews of a product.
+   * @param cursor the {@link ReviewPageDto#getNextCursor() next cursor} of the previous page or
+   *     {@code null} to get the first page
+   * @throws InvalidCursorException if the cursor is malformed or has been created for another
+   *     order
    */
-  @SuppressWarnings("unchecked")
-  public List<ReviewDto> getReviewsForProduct(int productSerial, @NonNull OrderBy orderBy) {
+  public ReviewPageDto getReviewsForProduct(int productSerial, @NonNull OrderBy orderBy,
+      String cursor, int limit) {
 
     Product product = productRepo.findBySerial(productSerial);
     if (product == null) {
       throw new SerialNotFoundException(Product.class, productSerial);
     }
     
-    List<?> results = reviewRepo.findByProduct(product, orderBy);
+    ReviewCursor after = cursor == null ? null : ReviewCursor.decode(cursor, orderBy);
+    
+    // fetch one more to know if there is a next page
+    List<Object[]> rows = findPage(product, orderBy, after, limit + 1);
+    boolean hasNextPage = rows.size() > limit;
+    if (hasNextPage) {
+      rows = rows.subList(0, limit);
+    }
+    List<Review> reviews = rows.stream()
+        .map(row -> (Review) row[0])
+        .collect(Collectors.toList());
     
-    if (contextHolder.get().getAuthenticatedUser().isPresent()) {
-      return ((List<Object[]>) results).stream()
-          .map(r -> reviewToDto((Review) r[0], (ReviewVote) r[1]))
+    Map<String, ReviewVote> votes = Collections.emptyMap();
+    Optional<AuthenticatedUserDto> user = contextHolder.get().getAuthenticatedUser();
+    if (user.isPresent() && !reviews.isEmpty()) {
+      // one query for the votes of the whole page
+      List<String> reviewIds = reviews.stream()
+          .map(review -> review.getPk().getId())
           .collect(Collectors.toList());
+      votes = voteRepo.findByUserIdAndReviewIds(user.get().getPk().getId(), reviewIds).stream()
+          .collect(Collectors.toMap(vote -> vote.getReview().getPk().getId(), vote -> vote));
+    }
+    
+    ReviewPageDto page = dtoFactory.createDto(ReviewPageDto.class);
+    List<ReviewDto> reviewDtos = new ArrayList<>(reviews.size());
+    for (Object[] row : rows) {
+      Review review = (Review) row[0];
+      reviewDtos.add(reviewToDto(review, (String) row[1], (UserLevel) row[2],
+          votes.get(review.getPk().getId())));
+    }
+    page.setReviews(reviewDtos);
+    if (hasNextPage) {
+      page.setNextCursor(ReviewCursor.of(reviews.get(reviews.size() - 1), orderBy).encode());
+    }
+    return page;
+  }
+
+  private List<Object[]> findPage(Product product, OrderBy orderBy, ReviewCursor after,
+      int limit) {
+    Pageable pageable = new PageRequest(0, limit);
+    if (orderBy == OrderBy.DATE) {
+      return after == null
+          ? reviewRepo.findPageByDate(product, pageable)
+          : reviewRepo.findPageByDateAfter(product, after.getCreatedAt(), after.getSerial(),
+              pageable);
     } else {
-      return results.stream()
-          .map(r -> reviewToDto((Review) r))
-          .collect(Collectors.toList());
+      return after == null
+          ? reviewRepo.findPageByScore(product, pageable)
+          : reviewRepo.findPageByScoreAfter(product, after.getScore(), after.getSerial(),
+              pageable);
     }
   }
 
@@ -113,11 +175,84 @@ public class ReviewService extends AbstractService {
    */
   public void deleteReview(int reviewSerial, int productSerial) {
     Review review = reviewRepo.findBySerialAndProductSerial(reviewSerial, productSerial);
+    if (review == null) {
+      throw new SerialNotFoundException(Review.class, reviewSerial);
+    }
     reviewRepo.delete(review);
+    addRating(review.getProduct(), review.getRating(), -1);
+    productChanged(productSerial);
+  }
+  
+  /**
+   * Changes the number of ratings with the given number of stars by {@code delta} and updates the
+   * derived values. The counts are changed with an atomic update, so concurrent reviews of the same
+   * product don't lose updates. The update also locks the product row, so the derived values are
+   * consistent with the counts when the transaction commits. Reviews without stars (rating 0)
+   * are not counted as ratings.
+   */
+  private void addRating(Product product, int rating, int delta) {
+    if (rating == 0) {
+      return;
+    }
+    final int[] deltas = new int[5];
+    deltas[rating - 1] = delta;
+    productRepo.addRatings(product.getPk().getId(),
+        deltas[0], deltas[1], deltas[2], deltas[3], deltas[4], delta);
+    
+    entityManager.refresh(product);
+    updateDerivedRatings(product);
+    productSuggester.setScore(
+        marketRegistry.get(contextHolder.get().getMarket().get().getSlug()).get().getId(),
+        product.getSerial(), product.getScore());
+  }
+  
+  /**
+   * Derives the average rating and the score from the rating counts.
+   */
+  private static void updateDerivedRatings(Product product) {
+    final int numRatings = product.getNumRatings();
+    product.setAvgRating(numRatings == 0 ? 0 : (double) (product.getNumOneStarRatings()
+        + 2 * product.getNumTwoStarRatings()
+        + 3 * product.getNumThreeStarRatings()
+        + 4 * product.getNumFourStarRatings()
+        + 5 * product.getNumFiveStarRatings()) / numRatings);
+    product.setScore(ScoreUtil.fromRatings(
+        product.getNumOneStarRatings(),
+        product.getNumTwoStarRatings(),
+        product.getNumThreeStarRatings(),
+        product.getNumFourStarRatings(),
+        product.getNumFiveStarRatings()));
+  }
+  
+  /**
+   * Fills the rating counts of products that were rated before the counts existed from their
+   * reviews. Each product is locked first, so that concurrent reviews are counted exactly once.
+   * Reviews without stars are not counted as ratings, unlike before.
+   */
+  private void backfillRatingCounts() {
+    final List<Product> products = productRepo.findWithIncompleteRatingCounts();
+    for (Product product : products) {
+      entityManager.refresh(product, LockModeType.PESSIMISTIC_WRITE);
+      final int[] counts = new int[5];
+      for (Object[] row : reviewRepo.countByRating(product.getPk().getId())) {
+        counts[(int) row[0] - 1] = ((Number) row[1]).intValue();
+      }
+      product.setNumOneStarRatings(counts[0]);
+      product.setNumTwoStarRatings(counts[1]);
+      product.setNumThreeStarRatings(counts[2]);
+      product.setNumFourStarRatings(counts[3]);
+      product.setNumFiveStarRatings(counts[4]);
+      product.setNumRatings(Arrays.stream(counts).sum());
+      updateDerivedRatings(product);
+    }
+    if (!products.isEmpty()) {
+      log.info("Filled the rating counts of {} products", products.size());
+    }
   }
 
   /**
-   * Creates or uptates the upvotes for a review.
+   * Creates or uptates the upvotes for a review. The vote is saved right away but the vote counts
+   * of the review are updated asynchronously (see {@link ReviewVoteAccumulator}).
    */
   public void vote(ReviewVoteDto reviewVoteDto, int reviewSerial, int productSerial) {
 
@@ -126,33 +261,29 @@ public class ReviewService extends AbstractService {
     ReviewVote vote 
         = voteRepo.findByUserIdAndReviewId(user.getPk().getId(), review.getPk().getId());
 
-    int numUpvotes = review.getNumUpvotes();
-    int numDownvotes = review.getNumDownvotes();
+    int upvoteDelta;
+    int downvoteDelta;
 
     if (vote != null) {
-      if (vote.isUpvote() && !reviewVoteDto.isUpvote()) {
-        review.setNumUpvotes(numUpvotes - 1);
-        review.setNumDownvotes(numDownvotes + 1);
-      } else if (!vote.isUpvote() && reviewVoteDto.isUpvote()) {
-        review.setNumUpvotes(numUpvotes + 1);
-        review.setNumDownvotes(numDownvotes - 1);
+      if (vote.isUpvote() == reviewVoteDto.isUpvote()) {
+        return; // nothing changes
       }
+      upvoteDelta = reviewVoteDto.isUpvote() ? 1 : -1;
+      downvoteDelta = -upvoteDelta;
       vote.setUpvote(reviewVoteDto.isUpvote());
     } else {
       vote = entityFactory.createEntity(ReviewVote.class);
       vote.setUpvote(reviewVoteDto.isUpvote());
       vote.setReview(review);
       vote.setUser(user);
-      if (reviewVoteDto.isUpvote()) {
-        review.setNumUpvotes(numUpvotes + 1);
-      } else {
-        review.setNumDownvotes(numDownvotes + 1);
-      }
+      upvoteDelta = reviewVoteDto.isUpvote() ? 1 : 0;
+      downvoteDelta = 1 - upvoteDelta;
     }
 
-    review.setScore(ScoreUtil.fromVotes((double) numUpvotes, (double) numDownvotes));
-
     voteRepo.save(vote);
+    // also changes the product version
+    voteAccumulator.add(contextHolder.get().getMarket().get().getSlug(), productSerial,
+        review.getPk().getId(), upvoteDelta, downvoteDelta);
   }
 
   /**
@@ -172,6 +303,7 @@ public class ReviewService extends AbstractService {
     int serial = serviceProvider.getService(SerialService.class).getNextSerial(ReviewComment.class);
     reviewComment.setSerial(serial);
     reviewCommentRepo.save(reviewComment);
+    voteAccumulator.productChanged(contextHolder.get().getMarket().get().getSlug(), productSerial);
 
     log.info("Created ReviewComment for Review with serial '{}'", reviewSerial);
 
@@ -188,9 +320,11 @@ public class ReviewService extends AbstractService {
       throw new SerialNotFoundException(Review.class, reviewSerial);
     }
     
-    return reviewCommentRepo.findByReviewIdOrderByCreatedAtAsc(review.getPk().getId())
+    // the authors are fetched by the same query
+    return reviewCommentRepo.findByReviewIdWithAuthor(review.getPk().getId())
       .stream()
-      .map(this::reviewCommentToDto)
+      .map(row -> reviewCommentToDto((ReviewComment) row[0], (String) row[1],
+          (UserLevel) row[2]))
       .collect(Collectors.toList());
   }
 
@@ -202,15 +336,27 @@ public class ReviewService extends AbstractService {
             .findBySerialAndReviewSerial(reviewCommentSerial, reviewSerial);
     // todo error handling
     reviewCommentRepo.delete(reviewComment);
+    voteAccumulator.productChanged(contextHolder.get().getMarket().get().getSlug(),
+        reviewComment.getReview().getProduct().getSerial());
   }
   
   /**
-   * Converts a review entity to a DTO.
+   * Changes the version of the product, which invalidates cached copies of the product and its
+   * reviews once the transaction commits.
    */
-  private ReviewDto reviewToDto(Review review) {
+  private void productChanged(int productSerial) {
+    productVersions.changed(contextHolder.get().getMarket().get().getSlug(), productSerial);
+  }
+  
+  /**
+   * Converts a review entity to a DTO. The name and level of the author are passed separately, so
+   * the (lazy) user doesn't need to be loaded.
+   */
+  private ReviewDto reviewToDto(Review review, String authorName, UserLevel authorLevel) {
     ReviewDto reviewDto = dtoFactory.createDto(ReviewDto.class);
 
-    UserDto userDto = serviceProvider.getService(UserService.class).toDto(review.getUser());
+    UserDto userDto = serviceProvider.getService(UserService.class)
+        .toDto(authorName, authorLevel);
 
     reviewDto.setUserDto(userDto);
     reviewDto.setSerial(review.getSerial());
@@ -218,15 +364,25 @@ public class ReviewService extends AbstractService {
     reviewDto.setRating(review.getRating());
     reviewDto.setText(review.getText());
     reviewDto.setTitle(review.getTitle());
-    reviewDto.setNumDownvotes(review.getNumDownvotes());
-    reviewDto.setNumUpvotes(review.getNumUpvotes());
-    reviewDto.setScore(review.getScore());
+    
+    VoteDelta pendingVotes = voteAccumulator.getPending(review.getPk().getId());
+    if (pendingVotes.isEmpty()) {
+      reviewDto.setNumUpvotes(review.getNumUpvotes());
+      reviewDto.setNumDownvotes(review.getNumDownvotes());
+      reviewDto.setScore(review.getScore());
+    } else {
+      reviewDto.setNumUpvotes(review.getNumUpvotes() + pendingVotes.getUpvotes());
+      reviewDto.setNumDownvotes(review.getNumDownvotes() + pendingVotes.getDownvotes());
+      reviewDto.setScore(
+          ScoreUtil.fromVotes(reviewDto.getNumUpvotes(), reviewDto.getNumDownvotes()));
+    }
 
     return reviewDto;
   }
   
-  private ReviewDto reviewToDto(Review review, ReviewVote vote) {
-    ReviewDto reviewDto = reviewToDto(review);
+  private ReviewDto reviewToDto(Review review, String authorName, UserLevel authorLevel,
+      ReviewVote vote) {
+    ReviewDto reviewDto = reviewToDto(review, authorName, authorLevel);
     if (vote != null) {
       reviewDto.setAuthenticatedUserVote(reviewVoteToDto(vote));
     }
@@ -239,10 +395,12 @@ public class ReviewService extends AbstractService {
     return voteDto;
   }
 
-  private ReviewCommentDto reviewCommentToDto(ReviewComment reviewComment) {
+  private ReviewCommentDto reviewCommentToDto(ReviewComment reviewComment, String authorName,
+      UserLevel authorLevel) {
 
     ReviewCommentDto reviewCommentDto = dtoFactory.createDto(ReviewCommentDto.class);
-    UserDto userDto = serviceProvider.getService(UserService.class).toDto(reviewComment.getUser());
+    UserDto userDto = serviceProvider.getService(UserService.class)
+        .toDto(authorName, authorLevel);
 
     reviewCommentDto.setUserDto(userDto);
     reviewCommentDto.setText(reviewComment.getText());
@@ -252,4 +410,14 @@ public class ReviewService extends AbstractService {
     return reviewCommentDto;
   }
 
+  @Override
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    backfillRatingCounts();
+  }
+
+  @Override
+  public int getOrder() {
+    return 15;
+  }
+
 }
@@ -0,0 +1,288 @@
+package com.xinra.reviewcommunity.service;
+
+import com.xinra.reviewcommunity.entity.Review;
+import com.xinra.reviewcommunity.entity.ReviewVote;
+import com.xinra.reviewcommunity.repo.ReviewRepository;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.PostConstruct;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Collects changes of the vote counts of reviews in memory and writes them to the database
+ * periodically. The {@link ReviewVote}s themselves are saved right away and remain the source of
+ * truth. The counts of a {@link Review} are just a cache. Pending changes are only added to the
+ * counts in responses of this instance. A flush doesn't add them to the stored counts but
+ * recounts the votes of the review, so votes that are still pending on other instances are never
+ * counted twice in the stored counts and concurrent votes don't cause lost updates. (Responses of
+ * the other instance count them twice until it flushes.)
+ *
+ * <p>The versions of the products whose reviews changed are written with the flush as well, once
+ * per product (see {@link ProductVersions}). This also applies to other changes of reviews, e.g.
+ * comments, so the rows of popular products are updated at most once per flush.
+ *
+ * <p>Counts that have drifted from the votes (e.g. because pending changes were lost in a crash)
+ * are corrected by {@link #reconcile()}.
+ */
+@Slf4j
+@Component
+public class ReviewVoteAccumulator {
+
+  /**
+   * Immutable change of the vote counts of a review.
+   */
+  @Getter
+  @RequiredArgsConstructor
+  public static class VoteDelta {
+
+    public static final VoteDelta NONE = new VoteDelta(0, 0);
+
+    private final int upvotes;
+    private final int downvotes;
+
+    public boolean isEmpty() {
+      return upvotes == 0 && downvotes == 0;
+    }
+
+    private VoteDelta plus(VoteDelta other) {
+      return new VoteDelta(upvotes + other.upvotes, downvotes + other.downvotes);
+    }
+
+    private VoteDelta minus(VoteDelta other) {
+      return new VoteDelta(upvotes - other.upvotes, downvotes - other.downvotes);
+    }
+  }
+
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  private static class ProductKey {
+    /**
+     * Slug of the market of the product.
+     */
+    private final String market;
+    private final int productSerial;
+  }
+
+  /**
+   * Pending change of a review together with the product it belongs to, whose version must change
+   * once the counts have been written.
+   */
+  @RequiredArgsConstructor
+  private static class PendingVotes {
+
+    private final ProductKey product;
+    private final VoteDelta delta;
+
+    private PendingVotes plus(PendingVotes other) {
+      return new PendingVotes(product, delta.plus(other.delta));
+    }
+
+    private PendingVotes minus(VoteDelta other) {
+      return new PendingVotes(product, delta.minus(other));
+    }
+  }
+
+  /**
+   * Pending deltas by review ID. The map locks per bin, so concurrent votes on different reviews
+   * don't block each other.
+   */
+  private final ConcurrentMap<String, PendingVotes> pending = new ConcurrentHashMap<>();
+
+  /**
+   * Products whose version must be written with the next flush.
+   */
+  private final Set<ProductKey> changedProducts = ConcurrentHashMap.newKeySet();
+
+  private @Autowired ReviewRepository<Review> reviewRepo;
+  private @Autowired ProductVersions productVersions;
+  private @Value("${reviewcommunity.vote.reconcile-batch-size:500}") int reconcileBatchSize;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Adds a change of the vote counts of a review once the current transaction commits. The
+   * version of the product changes right away on this instance and for all instances once the
+   * change has been flushed.
+   * @param market slug of the market of the product the review belongs to
+   */
+  public void add(String market, int productSerial, String reviewId, int upvotes,
+      int downvotes) {
+    final PendingVotes votes = new PendingVotes(new ProductKey(market, productSerial),
+        new VoteDelta(upvotes, downvotes));
+    ServiceUtil.afterCommit(() -> {
+      pending.merge(reviewId, votes, PendingVotes::plus);
+      productVersions.pendingChanged(market, productSerial);
+    });
+  }
+
+  /**
+   * Changes the version of a product once the current transaction commits, which must change the
+   * reviews of the product or their comments. The version changes right away on this instance and
+   * for all instances with the next flush.
+   * @param market slug of the market of the product
+   */
+  public void productChanged(String market, int productSerial) {
+    final ProductKey product = new ProductKey(market, productSerial);
+    ServiceUtil.afterCommit(() -> {
+      changedProducts.add(product);
+      productVersions.pendingChanged(market, productSerial);
+    });
+  }
+
+  /**
+   * Returns the change of the vote counts of a review that has not been written to the database
+   * yet.
+   */
+  public VoteDelta getPending(String reviewId) {
+    final PendingVotes votes = pending.get(reviewId);
+    return votes == null ? VoteDelta.NONE : votes.delta;
+  }
+
+  /**
+   * Writes all pending changes to the database. Each review is updated in its own transaction so
+   * that row locks are held as briefly as possible. Afterwards the version of each changed product
+   * is written once. Waits while counts are being reconciled.
+   */
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${reviewcommunity.vote.flush-interval:1000}")
+  public synchronized void flush() {
+    for (String reviewId : pending.keySet()) {
+      final PendingVotes votes = pending.get(reviewId);
+      if (votes == null) {
+        continue;
+      }
+      final VoteDelta delta = votes.delta;
+      try {
+        transactionTemplate.execute(status -> {
+          recount(reviewId);
+          return null;
+        });
+      } catch (RuntimeException ex) {
+        log.error("Writing votes of review with id {} failed. Will retry.", reviewId, ex);
+        continue;
+      }
+      // Votes that have been added in the meantime remain pending
+      pending.computeIfPresent(reviewId, (id, current) -> {
+        final PendingVotes remaining = current.minus(delta);
+        return remaining.delta.isEmpty() ? null : remaining;
+      });
+      // Pages that have been cached before the subtraction may count the votes twice, so they
+      // must not be served anymore
+      changedProducts.add(votes.product);
+    }
+    writeProductVersions();
+  }
+
+  private void writeProductVersions() {
+    final Set<ProductKey> products = new HashSet<>(changedProducts);
+    changedProducts.removeAll(products);
+
+    // Stamps are read before the products that are still pending, so that changes after the
+    // check have newer stamps and are not forgotten (see ProductVersions#pendingWritten)
+    final Map<ProductKey, Long> stamps = new HashMap<>();
+    for (ProductKey product : products) {
+      stamps.put(product,
+          productVersions.getPendingStamp(product.market, product.productSerial));
+    }
+    final Set<ProductKey> stillPending = pending.values().stream()
+        .map(votes -> votes.product)
+        .collect(Collectors.toSet());
+    stillPending.addAll(changedProducts);
+
+    for (ProductKey product : products) {
+      try {
+        transactionTemplate.execute(status -> {
+          productVersions.changed(product.market, product.productSerial);
+          if (!stillPending.contains(product)) {
+            productVersions.pendingWritten(product.market, product.productSerial,
+                stamps.get(product));
+          }
+          return null;
+        });
+      } catch (RuntimeException ex) {
+        log.error("Writing the version of product {} in market {} failed. Will retry.",
+            product.productSerial, product.market, ex);
+        changedProducts.add(product);
+      }
+    }
+  }
+
+  private void recount(String reviewId) {
+    if (reviewRepo.recountVotes(reviewId) == 0) {
+      return; // review has been deleted
+    }
+    // the row is locked by the update, so these are the counts we have just written
+    final List<Object[]> numVotes = reviewRepo.getNumVotes(reviewId);
+    final int numUpvotes = (int) numVotes.get(0)[0];
+    final int numDownvotes = (int) numVotes.get(0)[1];
+    reviewRepo.setScore(reviewId, ScoreUtil.fromVotes(numUpvotes, numDownvotes));
+    log.debug("Recounted votes of review with id {}: {}/{}", reviewId, numUpvotes,
+        numDownvotes);
+  }
+
+  /**
+   * Recounts the votes of all reviews and corrects counts and scores that don't match, e.g.
+   * because pending changes were lost in a crash. Reviews with changes pending on this instance
+   * are skipped, since the next flush recounts them anyway. Reviews are processed in batches and
+   * the flush is blocked only while a batch is being processed.
+   *
+   * <p>Corrections recount the votes like the flush does, so it doesn't matter whether other
+   * instances have pending changes.
+   */
+  @Scheduled(fixedDelayString = "${reviewcommunity.vote.reconcile-interval:3600000}",
+      initialDelayString = "${reviewcommunity.vote.reconcile-interval:3600000}")
+  public void reconcile() {
+    final Pageable batch = new PageRequest(0, reconcileBatchSize);
+    String lastId = "";
+    List<Object[]> counts;
+    do {
+      final String after = lastId;
+      synchronized (this) {
+        counts = transactionTemplate.execute(status -> {
+          final List<Object[]> page = reviewRepo.countVotesAfter(after, batch);
+          page.forEach(this::reconcileReview);
+          return page;
+        });
+      }
+      if (!counts.isEmpty()) {
+        lastId = (String) counts.get(counts.size() - 1)[0];
+      }
+    } while (counts.size() == reconcileBatchSize);
+  }
+
+  private void reconcileReview(Object[] counts) {
+    final String reviewId = (String) counts[0];
+    if (pending.containsKey(reviewId)
+        || (int) counts[1] == (long) counts[3] && (int) counts[2] == (long) counts[4]) {
+      return;
+    }
+    recount(reviewId);
+    productVersions.changed((String) counts[5], (int) counts[6]);
+    log.warn("Corrected votes of review with id {} from {}/{} to {}/{}", reviewId, counts[1],
+        counts[2], counts[3], counts[4]);
+  }
+
+}
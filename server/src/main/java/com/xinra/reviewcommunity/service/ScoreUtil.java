@@ -12,7 +12,7 @@ public class ScoreUtil {
    * Calculates the score by number of up- and downvotes.
    */
   public static double fromVotes(double numUpvotes, double numDownvotes) {
-    if (numDownvotes == 0 && numDownvotes == 0) {
+    if (numUpvotes == 0 && numDownvotes == 0) {
       return 0;
     }
     return (((numUpvotes + 1.9208) / (numUpvotes + numDownvotes) 
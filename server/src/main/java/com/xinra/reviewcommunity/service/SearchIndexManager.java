@@ -0,0 +1,296 @@
+package com.xinra.reviewcommunity.service;
+
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import com.xinra.reviewcommunity.shared.SearchIndexState;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.hibernate.search.batchindexing.MassIndexerProgressMonitor;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps a persistent search index consistent with the database without rebuilding it on every
+ * start. A checkpoint file next to the index records the time before which all changed products
+ * are known to be indexed. On startup, only products that have changed since then are queued for
+ * indexing (see {@link ProductIndexQueue}). If there is no usable checkpoint or the number of
+ * indexed products differs from the database afterwards, the index is rebuilt in the background.
+ * Search results are incomplete until then, but startup isn't blocked.
+ *
+ * <p>An in-memory index (directory provider "ram") is empty on every start, so it is always
+ * rebuilt, and synchronously as it is usually small.
+ */
+@Slf4j
+@Component
+public class SearchIndexManager implements PublicMetrics {
+
+  private static final String CHECKPOINT_FILE = "checkpoint.properties";
+  private static final String INDEXED_UNTIL = "indexedUntil";
+  private static final String FINGERPRINT = "fingerprint";
+
+  /**
+   * Part of the fingerprint. Must be incremented when the indexed fields change, so that existing
+   * indexes are rebuilt.
+   */
+  private static final int INDEX_FORMAT = 2;
+
+  /**
+   * Counts the progress of a rebuild.
+   */
+  private static class ProgressMonitor implements MassIndexerProgressMonitor {
+
+    private final AtomicLong numIndexed = new AtomicLong();
+    private final AtomicLong numTotal = new AtomicLong();
+
+    @Override
+    public void documentsAdded(long increment) {
+      numIndexed.addAndGet(increment);
+    }
+
+    @Override
+    public void documentsBuilt(int number) {}
+
+    @Override
+    public void entitiesLoaded(int size) {}
+
+    @Override
+    public void addToTotalCount(long count) {
+      numTotal.addAndGet(count);
+    }
+
+    @Override
+    public void indexingCompleted() {}
+  }
+
+  private @Getter volatile SearchIndexState state = SearchIndexState.STARTING;
+  private volatile ProgressMonitor progress = new ProgressMonitor();
+
+  private @PersistenceContext EntityManager entityManager;
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired ProductIndexQueue indexQueue;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private @Autowired @Qualifier(ServiceConfiguration.SEARCH_INDEX_EXECUTOR) Executor executor;
+  private @Value("${spring.jpa.properties.hibernate.search.default.directory_provider:ram}")
+      String directoryProvider;
+  private @Value("${spring.jpa.properties.hibernate.search.default.indexBase:.}")
+      String indexBase;
+  private @Value("${reviewcommunity.search.indexer.threads:2}") int indexerThreads;
+  private @Value("${reviewcommunity.search.indexer.batch-size:25}") int indexerBatchSize;
+  private @Value("${reviewcommunity.search.checkpoint-margin:60000}") long checkpointMargin;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  private boolean isPersistent() {
+    return !"ram".equals(directoryProvider);
+  }
+
+  /**
+   * Checks the index against the database and brings it up to date. Unless the index is held in
+   * memory, this returns immediately and the work is done in the background.
+   */
+  public void start() {
+    if (!isPersistent()) {
+      rebuild();
+      return;
+    }
+    executor.execute(() -> {
+      final Properties checkpoint = readCheckpoint();
+      if (checkpoint == null || !getFingerprint().equals(checkpoint.getProperty(FINGERPRINT))) {
+        log.info("No checkpoint of the search index matches the database");
+        rebuild();
+      } else {
+        catchUp(Long.parseLong(checkpoint.getProperty(INDEXED_UNTIL)));
+      }
+    });
+  }
+
+  /**
+   * Rebuilds the index in the background. Does nothing if a rebuild is already running.
+   */
+  public synchronized void startRebuild() {
+    if (state != SearchIndexState.REBUILDING) {
+      state = SearchIndexState.REBUILDING;
+      executor.execute(this::rebuild);
+    }
+  }
+
+  private void catchUp(long indexedUntil) {
+    state = SearchIndexState.CATCHING_UP;
+    final List<String> ids = transactionTemplate.execute(status -> productRepo.findIdsUpdatedAfter(
+        Instant.ofEpochMilli(indexedUntil).atZone(ZoneId.systemDefault())));
+    log.info("Catching up on {} products changed since the last checkpoint", ids.size());
+    indexQueue.addAll(ids, indexedUntil);
+    indexQueue.flush();
+
+    // products that have been deleted while their removal from the index was lost can't be
+    // found by the update time
+    final long numIndexed = countIndexedProducts();
+    final long numProducts = transactionTemplate.execute(status -> productRepo.count());
+    if (numIndexed != numProducts) {
+      log.warn("Search index contains {} products but there are {}", numIndexed, numProducts);
+      rebuild();
+    } else {
+      state = SearchIndexState.READY;
+    }
+  }
+
+  private void rebuild() {
+    state = SearchIndexState.REBUILDING;
+    final ProgressMonitor monitor = new ProgressMonitor();
+    progress = monitor;
+    log.info("Start building Lucene index");
+    try {
+      Search.getFullTextEntityManager(entityManager)
+          .createIndexer(Product.class)
+          .threadsToLoadObjects(indexerThreads)
+          .batchSizeToLoadObjects(indexerBatchSize)
+          .progressMonitor(monitor)
+          .startAndWait();
+    } catch (InterruptedException ex) {
+      log.error("Building Lucene index was interrupted", ex);
+      state = SearchIndexState.FAILED;
+      Thread.currentThread().interrupt();
+      return;
+    } catch (RuntimeException ex) {
+      log.error("Building Lucene index failed", ex);
+      state = SearchIndexState.FAILED;
+      return;
+    }
+    log.info("Finished building Lucene index");
+    state = SearchIndexState.READY;
+  }
+
+  private long countIndexedProducts() {
+    return transactionTemplate.execute(status -> {
+      FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+      return (long) fullTextEntityManager
+          .createFullTextQuery(new MatchAllDocsQuery(), Product.class)
+          .getResultSize();
+    });
+  }
+
+  public long getNumIndexed() {
+    return progress.numIndexed.get();
+  }
+
+  public long getNumTotal() {
+    return progress.numTotal.get();
+  }
+
+  /**
+   * Identifies the database and the format of the index, so that an index isn't reused with a
+   * different (e.g. recreated) database or after the indexed fields have changed.
+   */
+  private String getFingerprint() {
+    return INDEX_FORMAT + ":" + marketRegistry.getAll().stream()
+        .map(MarketRegistry.Entry::getId)
+        .sorted()
+        .collect(Collectors.joining(","));
+  }
+
+  private Path getCheckpointPath() {
+    return Paths.get(indexBase, CHECKPOINT_FILE);
+  }
+
+  private Properties readCheckpoint() {
+    final Path path = getCheckpointPath();
+    if (!Files.exists(path)) {
+      return null;
+    }
+    final Properties checkpoint = new Properties();
+    try (InputStream in = Files.newInputStream(path)) {
+      checkpoint.load(in);
+    } catch (IOException ex) {
+      log.warn("Reading the search index checkpoint failed", ex);
+      return null;
+    }
+    try {
+      Long.parseLong(checkpoint.getProperty(INDEXED_UNTIL));
+    } catch (NumberFormatException ex) {
+      log.warn("Search index checkpoint is malformed");
+      return null;
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Records the time before which all changed products are indexed, minus a margin for
+   * transactions that were still running. Only done while the index is complete.
+   */
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${reviewcommunity.search.checkpoint-interval:60000}")
+  public void writeCheckpoint() {
+    if (!isPersistent() || state != SearchIndexState.READY) {
+      return;
+    }
+    // also called on shutdown before the queue is flushed
+    indexQueue.flush();
+
+    final Properties checkpoint = new Properties();
+    checkpoint.setProperty(INDEXED_UNTIL,
+        Long.toString(indexQueue.getIndexedUntil() - checkpointMargin));
+    checkpoint.setProperty(FINGERPRINT, getFingerprint());
+
+    // written to a temporary file first, so that a crash doesn't leave a partial checkpoint
+    final Path path = getCheckpointPath();
+    try {
+      Files.createDirectories(path.getParent());
+      final Path temp = Files.createTempFile(path.getParent(), CHECKPOINT_FILE, ".tmp");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        checkpoint.store(out, null);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      log.error("Writing the search index checkpoint failed", ex);
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    final Collection<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>("search.rebuild.indexed", getNumIndexed()));
+    metrics.add(new Metric<>("search.rebuild.total", getNumTotal()));
+    metrics.add(new Metric<>("search.index.ready", state == SearchIndexState.READY ? 1 : 0));
+    return metrics;
+  }
+
+}
@@ -1,22 +1,42 @@
 package com.xinra.reviewcommunity.service;
 
+import com.xinra.nucleus.common.ContextHolder;
+import com.xinra.reviewcommunity.Context;
+import com.xinra.reviewcommunity.entity.FacetFilterFactory;
+import com.xinra.reviewcommunity.entity.MarketFilterFactory;
 import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.shared.ProductSearchOrder;
 import com.xinra.reviewcommunity.shared.dto.BrandDto;
+import com.xinra.reviewcommunity.shared.dto.FacetValueDto;
 import com.xinra.reviewcommunity.shared.dto.ProductDto;
+import com.xinra.reviewcommunity.shared.dto.ProductSearchResultDto;
+import com.xinra.reviewcommunity.shared.dto.ProductSuggestionDto;
+import com.xinra.reviewcommunity.shared.dto.SearchIndexStatusDto;
 import java.util.List;
 import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queries.CustomScoreProvider;
+import org.apache.lucene.queries.CustomScoreQuery;
+import org.apache.lucene.queries.function.FunctionQuery;
+import org.apache.lucene.queries.function.valuesource.DoubleFieldSource;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.hibernate.search.jpa.FullTextEntityManager;
 import org.hibernate.search.jpa.FullTextQuery;
 import org.hibernate.search.jpa.Search;
 import org.hibernate.search.query.dsl.QueryBuilder;
+import org.hibernate.search.query.facet.FacetSortOrder;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
@@ -25,25 +45,76 @@ import org.springframework.transaction.annotation.Transactional;
 public class SearchService extends AbstractService
     implements ApplicationListener<ContextRefreshedEvent>, Ordered {
   
+  /**
+   * Multiplies the relevance of a product by {@code 1 + score}, so products with better ratings
+   * rank higher without ignoring how well they match. The score is read from doc values.
+   */
+  private static class ScoreBoostQuery extends CustomScoreQuery {
+    
+    private ScoreBoostQuery(Query subQuery) {
+      super(subQuery, new FunctionQuery(new DoubleFieldSource("score")));
+    }
+    
+    @Override
+    protected CustomScoreProvider getCustomScoreProvider(LeafReaderContext context) {
+      return new CustomScoreProvider(context) {
+        @Override
+        public float customScore(int doc, float subQueryScore, float valSrcScore) {
+          return subQueryScore * (1 + valSrcScore);
+        }
+      };
+    }
+  }
+  
+  private static final String[] FACETS
+      = {Product.CATEGORY_FACET, Product.BRAND_FACET, Product.RATING_FACET};
+  
+  /**
+   * Maximum number of values per facet, e.g. only the brands with the most matching products.
+   */
+  private static final int MAX_FACET_VALUES = 50;
+  
   private @PersistenceContext EntityManager entityManager;
+  private @Autowired ContextHolder<Context> contextHolder;
+  private @Autowired MarketRegistry marketRegistry;
+  private @Autowired ProductSuggester productSuggester;
+  private @Autowired SearchIndexManager searchIndexManager;
+  private @Autowired ProductIndexQueue indexQueue;
   
   /**
-   * Rebuilds the Lucene index to make sure it is in sync with the database.
+   * Rebuilds the Lucene index in the background. Use this if it is not in sync with the database.
    */
+  @Transactional(propagation = Propagation.SUPPORTS)
   public void rebuildIndex() {
-    log.info("Start building Lucene index");
-    try {
-      Search.getFullTextEntityManager(entityManager).createIndexer().startAndWait();
-    } catch (InterruptedException ex) {
-      log.error("Building Lucene index was interrupted", ex);
-    }
-    log.info("Finished building Lucene index");
+    searchIndexManager.startRebuild();
+  }
+  
+  /**
+   * Returns the state of the Lucene index and the progress of the current (or last) rebuild.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public SearchIndexStatusDto getIndexStatus() {
+    SearchIndexStatusDto status = dtoFactory.createDto(SearchIndexStatusDto.class);
+    status.setState(searchIndexManager.getState());
+    status.setNumIndexed(searchIndexManager.getNumIndexed());
+    status.setNumTotal(searchIndexManager.getNumTotal());
+    status.setIndexLag(indexQueue.getIndexLag());
+    return status;
   }
   
   /**
-   * Searches for products in the Lucene index.
+   * Searches for products in the Lucene index. Results are sorted by the index, only the requested
+   * page is loaded. The number of all matching products per category, brand and rating is
+   * counted in the same pass.
+   * @param categorySerial drill down to products of this category or {@code null}
+   * @param brandSerial drill down to products of this brand (0 for no brand) or {@code null}
+   * @param stars drill down to products with this rounded down average rating or {@code null}
+   * @param offset number of results to skip
+   * @param limit maximum number of results
    */
-  public List<ProductDto> searchProducts(String queryString) {
+  public ProductSearchResultDto searchProducts(@NonNull String queryString,
+      @NonNull ProductSearchOrder order, Integer categorySerial, Integer brandSerial,
+      Integer stars, int offset, int limit) {
     
     final FullTextEntityManager fullTextEntityManager 
         = Search.getFullTextEntityManager(entityManager);
@@ -54,26 +125,69 @@ public class SearchService extends AbstractService
         .forEntity(Product.class)
         .get();
     
-    final Query luceneQuery = queryBuilder
+    final Query keywordQuery = queryBuilder
         .keyword()
         .onFields("name", "description", "category.name", "brand.name")
         .matching(queryString)
         .createQuery();
     
+    final Query luceneQuery = order == ProductSearchOrder.BLENDED
+        ? new ScoreBoostQuery(keywordQuery) : keywordQuery;
+    
     final FullTextQuery query = fullTextEntityManager.createFullTextQuery(luceneQuery);
+    // the Hibernate filter of ContextAwareFilterAdvice doesn't apply to the index
+    contextHolder.get().getMarket().ifPresent(market -> query
+        .enableFullTextFilter(MarketFilterFactory.NAME)
+        .setParameter("marketId", marketRegistry.get(market.getSlug()).get().getId()));
+    // drill-down is done with cached filters, so the relevance isn't affected
+    // the facet counts products of a category, but the drill-down includes its descendants
+    enableFacetFilter(query, Product.CATEGORY_FACET, Product.CATEGORY_ANCESTORS_FIELD,
+        categorySerial);
+    enableFacetFilter(query, Product.BRAND_FACET, brandSerial);
+    enableFacetFilter(query, Product.RATING_FACET, stars);
+    for (String facet : FACETS) {
+      query.getFacetManager().enableFaceting(queryBuilder.facet()
+          .name(facet)
+          .onField(facet)
+          .discrete()
+          .orderedBy(FacetSortOrder.COUNT_DESC)
+          .includeZeroCounts(false)
+          .maxFacetCount(MAX_FACET_VALUES)
+          .createFacetingRequest());
+    }
+    // sorting by fields uses their doc values (see @SortableField)
+    if (order == ProductSearchOrder.SCORE) {
+      query.setSort(new Sort(new SortField("score", SortField.Type.DOUBLE, true),
+          SortField.FIELD_SCORE));
+    } else if (order == ProductSearchOrder.NUM_RATINGS) {
+      query.setSort(new Sort(new SortField("numRatings", SortField.Type.INT, true),
+          SortField.FIELD_SCORE));
+    }
+    query.setFirstResult(offset);
+    query.setMaxResults(limit);
     query.setProjection("name", "description", "category.serial", "brand.name", "brand.serial",
-        "avgRating", "numRatings", "serial");
+        "avgRating", "numRatings", "serial", "numOneStarRatings", "numTwoStarRatings",
+        "numThreeStarRatings", "numFourStarRatings", "numFiveStarRatings");
     
     @SuppressWarnings("unchecked")
     List<Object[]> results = query.getResultList();
     
-    return results.stream().map(result -> {
+    final ProductSearchResultDto searchResult
+        = dtoFactory.createDto(ProductSearchResultDto.class);
+    // the facets have been collected while executing the query above
+    searchResult.setCategories(getFacetValues(query, Product.CATEGORY_FACET));
+    searchResult.setBrands(getFacetValues(query, Product.BRAND_FACET));
+    searchResult.setRatings(getFacetValues(query, Product.RATING_FACET));
+    searchResult.setProducts(results.stream().map(result -> {
       ProductDto product = dtoFactory.createDto(ProductDto.class);
-      BrandDto brand = dtoFactory.createDto(BrandDto.class);
       
-      brand.setName((String) result[3]);
-      brand.setSerial((int) result[4]);
-      product.setBrand(brand);
+      // products without a brand have no brand fields in the index
+      if (result[4] != null) {
+        BrandDto brand = dtoFactory.createDto(BrandDto.class);
+        brand.setName((String) result[3]);
+        brand.setSerial((int) result[4]);
+        product.setBrand(brand);
+      }
       
       product.setName((String) result[0]);
       product.setDescription((String) result[1]);
@@ -81,14 +195,62 @@ public class SearchService extends AbstractService
       product.setAvgRating((double) result[5]);
       product.setNumRatings((int) result[6]);
       product.setSerial((int) result[7]);
+      product.setRatingHistogram(new int[] {
+          (int) result[8],
+          (int) result[9],
+          (int) result[10],
+          (int) result[11],
+          (int) result[12]
+      });
 
       return product;
+    }).collect(Collectors.toList()));
+    return searchResult;
+  }
+  
+  private static void enableFacetFilter(FullTextQuery query, String facet, Integer value) {
+    enableFacetFilter(query, facet, facet, value);
+  }
+  
+  private static void enableFacetFilter(FullTextQuery query, String facet, String field,
+      Integer value) {
+    if (value != null) {
+      query.enableFullTextFilter(facet)
+          .setParameter(FacetFilterFactory.FIELD, field)
+          .setParameter(FacetFilterFactory.VALUE, value.toString());
+    }
+  }
+  
+  private List<FacetValueDto> getFacetValues(FullTextQuery query, String facet) {
+    return query.getFacetManager().getFacets(facet).stream().map(result -> {
+      FacetValueDto facetValue = dtoFactory.createDto(FacetValueDto.class);
+      facetValue.setValue(Integer.parseInt(result.getValue()));
+      facetValue.setCount(result.getCount());
+      return facetValue;
+    }).collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the products of the current market with the highest scores whose name or brand
+   * starts with the given prefix. This is answered from memory (see {@link ProductSuggester}).
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public List<ProductSuggestionDto> suggestProducts(@NonNull String prefix, int limit) {
+    final String marketId = marketRegistry
+        .get(contextHolder.get().getMarket().get().getSlug()).get().getId();
+    
+    return productSuggester.suggest(marketId, prefix, limit).stream().map(suggestion -> {
+      ProductSuggestionDto dto = dtoFactory.createDto(ProductSuggestionDto.class);
+      dto.setSerial(suggestion.getSerial());
+      dto.setName(suggestion.getName());
+      return dto;
     }).collect(Collectors.toList());
   }
 
   @Override
   public void onApplicationEvent(ContextRefreshedEvent event) {
-    rebuildIndex();
+    searchIndexManager.start();
+    productSuggester.reload();
   }
 
   @Override
@@ -0,0 +1,113 @@
+package com.xinra.reviewcommunity.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands out serials from blocks that have been reserved in the database beforehand (hi/lo). The
+ * fast path is a single atomic increment. When half of the current block is consumed, the next
+ * block is reserved in the background so that callers usually never wait for the database.
+ *
+ * <p>Serials are unique across nodes because every block is reserved by its own database
+ * transaction. They are, however, only monotonic within one node and blocks that have not been used
+ * up before shutdown leave gaps.
+ */
+@Slf4j
+class SerialBlockAllocator {
+
+  private static class Block {
+
+    static final Block EMPTY = new Block(1, 0);
+
+    final int last;
+    final int refillThreshold;
+    final AtomicInteger next;
+
+    Block(int first, int size) {
+      last = first + size - 1;
+      refillThreshold = first + size / 2;
+      next = new AtomicInteger(first);
+    }
+  }
+
+  private final String name;
+  private final int blockSize;
+  private final IntSupplier reservation;
+  private final Executor executor;
+
+  private volatile Block current = Block.EMPTY;
+
+  /**
+   * The block that is reserved in the background. Guarded by {@code this}.
+   */
+  private CompletableFuture<Block> upcoming;
+
+  /**
+   * Creates an allocator.
+   * @param name used for logging
+   * @param blockSize number of serials that are reserved at once
+   * @param reservation reserves a block of {@code blockSize} serials in the database and returns
+   *     the first one
+   * @param executor used to reserve blocks in the background
+   */
+  SerialBlockAllocator(String name, int blockSize, IntSupplier reservation, Executor executor) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Block size must be positive");
+    }
+    this.name = name;
+    this.blockSize = blockSize;
+    this.reservation = reservation;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the next serial. Reserves a new block synchronously if the current one is used up and
+   * the background reservation has not been started or has failed.
+   */
+  int next() {
+    while (true) {
+      final Block block = current;
+      final int serial = block.next.getAndIncrement();
+      if (serial <= block.last) {
+        if (serial == block.refillThreshold) {
+          reserveUpcoming();
+        }
+        return serial;
+      }
+      advance(block);
+    }
+  }
+
+  private synchronized void reserveUpcoming() {
+    if (upcoming == null) {
+      upcoming = CompletableFuture.supplyAsync(this::reserve, executor);
+    }
+  }
+
+  private synchronized void advance(Block exhausted) {
+    if (current != exhausted) {
+      return; // another thread has already switched to the next block
+    }
+    Block block = null;
+    if (upcoming != null) {
+      try {
+        block = upcoming.join();
+      } catch (CompletionException ex) {
+        log.warn("Background reservation of serials for {} failed", name, ex.getCause());
+      }
+      upcoming = null;
+    }
+    current = block != null ? block : reserve();
+  }
+
+  private Block reserve() {
+    final int first = reservation.getAsInt();
+    log.debug("Reserved serials {} to {} of {}.", first, first + blockSize - 1, name);
+    return new Block(first, blockSize);
+  }
+
+}
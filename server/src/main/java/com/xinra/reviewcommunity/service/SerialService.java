@@ -1,13 +1,20 @@
 package com.xinra.reviewcommunity.service;
 
+import com.google.common.util.concurrent.Striped;
 import com.xinra.nucleus.entity.EntityPk;
 import com.xinra.reviewcommunity.entity.ChildSerial;
 import com.xinra.reviewcommunity.entity.Serial;
 import com.xinra.reviewcommunity.entity.SerialEntity;
 import com.xinra.reviewcommunity.repo.ChildSerialRepository;
 import com.xinra.reviewcommunity.repo.SerialRepository;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
@@ -17,8 +24,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 @Transactional(
     // This ensures that there are NO concurrent transactions. It prevents any concurrency related
-    // issues but is not really necessary. If performance becomes an issue, we can switch to
-    // pessimistic locking which is more suitable here.
+    // issues but is not really necessary. Reserving blocks and creating child serials is rare, so
+    // it doesn't hurt. Methods that are called frequently override this.
     isolation = Isolation.SERIALIZABLE,
     // The serial is bumped in its own transaction. Because of this, the consuming transaction
     // allows concurrency. If the consuming transaction rolls back after acquiring a serial, the
@@ -28,39 +35,98 @@ public class SerialService extends AbstractService {
   
   private @Autowired SerialRepository<Serial> serialRepo;
   private @Autowired ChildSerialRepository<ChildSerial> childSerialRepo;
+  private @Autowired @Qualifier(ServiceConfiguration.SERIAL_EXECUTOR) Executor executor;
+  private @Value("${reviewcommunity.serial.block-size:20}") int blockSize;
+  
+  private final ConcurrentMap<String, SerialBlockAllocator> allocators
+      = new ConcurrentHashMap<>();
+  private final Striped<Lock> childSerialLocks = Striped.lock(64);
 
   /**
-   * Gets the next top-level serial of an entity class.
+   * Gets the next top-level serial of an entity class. Serials are handed out from blocks that are
+   * reserved in advance (see {@link #reserveSerials(String, int)}), so this usually doesn't access
+   * the database at all.
    */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public int getNextSerial(Class<? extends SerialEntity> entityType) {
-    Serial serial = serialRepo.findByName(entityType.getName());
+    return allocators.computeIfAbsent(entityType.getName(), this::createAllocator).next();
+  }
+  
+  private SerialBlockAllocator createAllocator(String name) {
+    return new SerialBlockAllocator(name, blockSize,
+        () -> serviceProvider.getService(SerialService.class).reserveSerials(name, blockSize),
+        executor);
+  }
+  
+  /**
+   * Reserves a block of consecutive top-level serials.
+   * @param name the name of the entity class
+   * @param count the number of serials to reserve
+   * @return the first serial of the block
+   */
+  public int reserveSerials(String name, int count) {
+    Serial serial = serialRepo.findByName(name);
     if (serial == null) {
       serial = entityFactory.createEntity(Serial.class);
-      serial.setName(entityType.getName());
+      serial.setName(name);
     }
-    final int nextSerial = serial.getLastSerial() + 1;
-    serial.setLastSerial(nextSerial);
+    final int firstSerial = serial.getLastSerial() + 1;
+    serial.setLastSerial(serial.getLastSerial() + count);
     serialRepo.save(serial);
-    log.debug("Top-level serial of {} incremented to {}.", entityType.getName(), nextSerial);
-    return nextSerial;
+    log.debug("Top-level serial of {} incremented to {}.", name, serial.getLastSerial());
+    return firstSerial;
   }
   
   /**
-   * Get the next child serial of an entity.
+   * Get the next child serial of an entity. Concurrent calls for the same child are queued in
+   * memory instead of blocking each other (and a database connection) on the row lock.
    * @param name the name of the child. Must be unique within the entity class.
    */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public int getNextChildSerial(EntityPk entityPk, String name) {
-    ChildSerial serial = childSerialRepo.findByEntityIdAndName(entityPk.getId(), name);
+    final SerialService self = serviceProvider.getService(SerialService.class);
+    final Lock lock = childSerialLocks.get(entityPk.getId() + '/' + name);
+    lock.lock();
+    try {
+      int nextSerial = self.incrementChildSerial(entityPk.getId(), name);
+      if (nextSerial == 0) {
+        nextSerial = self.createChildSerial(entityPk.getId(), name);
+      }
+      log.debug("Child serial '{}' of entity with id {} incremented to {}.", name, entityPk,
+          nextSerial);
+      return nextSerial;
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  /**
+   * Increments an existing child serial with a single atomic update.
+   * @return the incremented serial or 0 if the child serial doesn't exist yet
+   */
+  @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+  public int incrementChildSerial(String entityId, String name) {
+    if (childSerialRepo.increment(entityId, name) == 0) {
+      return 0;
+    }
+    // the row is locked by the update, so this is the value we have set
+    return childSerialRepo.getLastSerial(entityId, name);
+  }
+  
+  /**
+   * Creates a child serial if it doesn't exist yet and increments it. This only happens once per
+   * child, so the serializable transaction doesn't hurt here.
+   */
+  public int createChildSerial(String entityId, String name) {
+    ChildSerial serial = childSerialRepo.findByEntityIdAndName(entityId, name);
     if (serial == null) {
       serial = entityFactory.createEntity(ChildSerial.class);
       serial.setName(name);
-      serial.setEntityId(entityPk.getId());
+      serial.setEntityId(entityId);
     }
     final int nextSerial = serial.getLastSerial() + 1;
     serial.setLastSerial(nextSerial);
     childSerialRepo.save(serial);
-    log.debug("Child serial '{}' of entity with id {} incremented to {}.", name, entityPk,
-        nextSerial);
     return nextSerial;
   }
 
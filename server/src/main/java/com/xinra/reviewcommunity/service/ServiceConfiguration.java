@@ -3,13 +3,21 @@ package com.xinra.reviewcommunity.service;
 import com.xinra.reviewcommunity.shared.dto.DtoFactory;
 import com.xinra.reviewcommunity.shared.dto.InstantiatingDtoFactory;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 @Configuration
+@EnableScheduling
 @EnableSpringDataWebSupport
 public class ServiceConfiguration {
+  
+  public static final String SERIAL_EXECUTOR = "serialExecutor";
+  public static final String SEARCH_INDEX_EXECUTOR = "searchIndexExecutor";
+  public static final String PASSWORD_EXECUTOR = "passwordExecutor";
 
   /**
    * For now, no interfaces are used and classes are instantiated directly.
@@ -19,4 +27,42 @@ public class ServiceConfiguration {
     return new InstantiatingDtoFactory();
   }
   
+  /**
+   * Reserves blocks of serials in the background (see {@link SerialService}).
+   */
+  @Bean(name = SERIAL_EXECUTOR)
+  public ThreadPoolTaskExecutor serialExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setThreadNamePrefix("serial-");
+    return executor;
+  }
+  
+  /**
+   * Checks and rebuilds the search index in the background (see {@link SearchIndexManager}).
+   */
+  @Bean(name = SEARCH_INDEX_EXECUTOR)
+  public ThreadPoolTaskExecutor searchIndexExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setThreadNamePrefix("search-index-");
+    return executor;
+  }
+  
+  /**
+   * Hashes and verifies passwords (see {@link PasswordHasher}). Tasks are rejected if the queue is
+   * full.
+   */
+  @Bean(name = PASSWORD_EXECUTOR)
+  public ThreadPoolTaskExecutor passwordExecutor(
+      @Value("${reviewcommunity.password.threads:2}") int threads,
+      @Value("${reviewcommunity.password.queue-capacity:100}") int queueCapacity) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("password-");
+    return executor;
+  }
+  
 }
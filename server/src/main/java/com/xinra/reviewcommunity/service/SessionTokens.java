@@ -0,0 +1,237 @@
+package com.xinra.reviewcommunity.service;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.xinra.nucleus.entity.EntityFactory;
+import com.xinra.nucleus.entity.EntityPk;
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
+import com.xinra.reviewcommunity.entity.RevokedSessionToken;
+import com.xinra.reviewcommunity.repo.RevokedSessionTokenRepository;
+import com.xinra.reviewcommunity.shared.Role;
+import com.xinra.reviewcommunity.shared.UserLevel;
+import com.xinra.reviewcommunity.shared.dto.DtoFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Issues and verifies signed session tokens, which replace the servlet session if
+ * {@code reviewcommunity.session-token.enabled} is set. A token carries the ID, roles, level and
+ * name of the user and is signed with HMAC-SHA256, so any instance that shares the secret can
+ * authenticate a request without a session store or a database query.
+ *
+ * <p>Tokens can't be changed once issued, so logging out revokes the token. Revoked tokens are
+ * saved until they expire and every instance reloads them periodically, so a revoked token may
+ * still be accepted by other instances for up to the reload interval.
+ */
+@Slf4j
+@Component
+public class SessionTokens {
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final char SEPARATOR = '.';
+  private static final Joiner CLAIM_JOINER = Joiner.on(':');
+  private static final Splitter CLAIM_SPLITTER = Splitter.on(':').limit(6);
+  private static final Joiner ROLE_JOINER = Joiner.on(',');
+  private static final Splitter ROLE_SPLITTER = Splitter.on(',').omitEmptyStrings();
+
+  /**
+   * The claims of a verified token.
+   */
+  private static class Claims {
+    private String userId;
+    private Set<Role> roles;
+    private UserLevel level;
+    private long expiresAt;
+    private String tokenId;
+    private String name;
+  }
+
+  private @Getter @Value("${reviewcommunity.session-token.enabled:false}") boolean enabled;
+  private @Value("${reviewcommunity.session-token.secret:}") String secret;
+  private @Value("${reviewcommunity.session-token.ttl:86400000}") long ttl;
+
+  private ThreadLocal<Mac> mac;
+  // revocations of this instance that happen during a reload are replayed onto the loaded tokens
+  private final ReloadableState<Set<String>> revoked
+      = new ReloadableState<>(ConcurrentHashMap.newKeySet());
+
+  private @Autowired RevokedSessionTokenRepository<RevokedSessionToken> revokedRepo;
+  private @Autowired EntityFactory entityFactory;
+  private @Autowired DtoFactory dtoFactory;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  @PostConstruct
+  private void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    // revoking and reloading may be triggered while another transaction is active
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+    final byte[] key;
+    if (secret.isEmpty()) {
+      key = new byte[32];
+      new SecureRandom().nextBytes(key);
+      if (enabled) {
+        log.warn("No session token secret is configured. Tokens are only valid on this instance "
+            + "until it is restarted");
+      }
+    } else {
+      key = Base64.getDecoder().decode(secret);
+    }
+    final SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+    mac = ThreadLocal.withInitial(() -> {
+      try {
+        final Mac instance = Mac.getInstance(ALGORITHM);
+        instance.init(keySpec);
+        return instance;
+      } catch (GeneralSecurityException ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+  }
+
+  /**
+   * Issues a token for an authenticated user that expires after the configured time.
+   */
+  public String issue(@NonNull AuthenticatedUserDto user) {
+    final String payload = CLAIM_JOINER.join(
+        user.getPk().getId(),
+        ROLE_JOINER.join(user.getRoles()),
+        user.getLevel(),
+        System.currentTimeMillis() + ttl,
+        UUID.randomUUID(),
+        user.getName());
+    final String encodedPayload = Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    return encodedPayload + SEPARATOR + sign(encodedPayload);
+  }
+
+  /**
+   * Returns the user of a token if it has a valid signature and has neither expired nor been
+   * revoked. This doesn't access the database.
+   */
+  public Optional<AuthenticatedUserDto> verify(@NonNull String token) {
+    final Claims claims = parse(token);
+    if (claims == null || claims.expiresAt <= System.currentTimeMillis()
+        || revoked.get().contains(claims.tokenId)) {
+      return Optional.empty();
+    }
+
+    final AuthenticatedUserDto user = dtoFactory.createDto(AuthenticatedUserDto.class);
+    final String userId = claims.userId;
+    final EntityPk pk = () -> userId;
+    user.setPk(pk);
+    user.setName(claims.name);
+    user.setLevel(claims.level);
+    user.setRoles(claims.roles);
+    user.setPermissions(Role.getAllTransitivePermissions(claims.roles));
+    user.setAuthorityMask(Role.getAuthorityMask(claims.roles));
+    return Optional.of(user);
+  }
+
+  /**
+   * Revokes a token, so that it isn't accepted anymore. Does nothing if the token is invalid or
+   * has expired already.
+   */
+  public void revoke(@NonNull String token) {
+    final Claims claims = parse(token);
+    if (claims == null || claims.expiresAt <= System.currentTimeMillis()) {
+      return;
+    }
+    revoked.change(tokenIds -> tokenIds.add(claims.tokenId));
+    transactionTemplate.execute(status -> {
+      final RevokedSessionToken revokedToken
+          = entityFactory.createEntity(RevokedSessionToken.class);
+      revokedToken.setTokenId(claims.tokenId);
+      revokedToken.setExpiresAt(
+          Instant.ofEpochMilli(claims.expiresAt).atZone(ZoneId.systemDefault()));
+      return revokedRepo.save(revokedToken);
+    });
+  }
+
+  /**
+   * Loads the tokens that have been revoked by all instances and deletes those that have expired.
+   */
+  @Scheduled(fixedDelayString = "${reviewcommunity.session-token.revocation-reload-interval:10000}")
+  public void reloadRevocations() {
+    if (!enabled) {
+      return;
+    }
+    revoked.reload(() -> {
+      final List<String> tokenIds = transactionTemplate.execute(status -> {
+        final ZonedDateTime now = ZonedDateTime.now();
+        revokedRepo.deleteExpired(now);
+        return revokedRepo.findUnexpiredTokenIds(now);
+      });
+      final Set<String> loaded = ConcurrentHashMap.newKeySet(tokenIds.size());
+      loaded.addAll(tokenIds);
+      return loaded;
+    });
+  }
+
+  /**
+   * Returns the claims of a token or {@code null} if it is malformed or the signature is invalid.
+   */
+  private Claims parse(String token) {
+    final int separator = token.indexOf(SEPARATOR);
+    if (separator < 0) {
+      return null;
+    }
+    final String encodedPayload = token.substring(0, separator);
+    final byte[] signature = token.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+    if (!MessageDigest.isEqual(signature,
+        sign(encodedPayload).getBytes(StandardCharsets.US_ASCII))) {
+      return null;
+    }
+
+    try {
+      final List<String> values = CLAIM_SPLITTER.splitToList(new String(
+          Base64.getUrlDecoder().decode(encodedPayload), StandardCharsets.UTF_8));
+      final Claims claims = new Claims();
+      claims.userId = values.get(0);
+      claims.roles = EnumSet.noneOf(Role.class);
+      for (String role : ROLE_SPLITTER.split(values.get(1))) {
+        claims.roles.add(Role.valueOf(role));
+      }
+      claims.level = UserLevel.valueOf(values.get(2));
+      claims.expiresAt = Long.parseLong(values.get(3));
+      claims.tokenId = values.get(4);
+      claims.name = values.get(5);
+      return claims;
+    } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+      // a valid signature with malformed claims means the format has changed
+      return null;
+    }
+  }
+
+  private String sign(String encodedPayload) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(
+        mac.get().doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+}
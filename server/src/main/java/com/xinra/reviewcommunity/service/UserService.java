@@ -12,7 +12,6 @@ import com.xinra.reviewcommunity.shared.dto.UserDto;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -39,6 +38,7 @@ public class UserService extends AbstractService {
   
   private @Autowired UserRepository<User> userRepo;
   private @Autowired PasswordLoginRepository<PasswordLogin> passwordLoginRepo;
+  private @Autowired PasswordHasher passwordHasher;
 
   private User createUser(String name, String email) {
     
@@ -64,13 +64,14 @@ public class UserService extends AbstractService {
    * @param name The username. Must be unique.
    * @param email The email address. May be null.
    * @throws UsernameAlreadyExistsException if there is a user with this name already
+   * @throws PasswordHasher.PasswordHasherBusyException if too many passwords are being hashed
    */
   public void createUserWithPassword(@NonNull String name, String email, @NonNull String password) {
     User user = createUser(name, email);
     
     PasswordLogin login = entityFactory.createEntity(PasswordLogin.class);
     login.setUser(user);
-    login.setPasswordHash(BCrypt.hashpw(password, BCrypt.gensalt()));
+    login.setPasswordHash(passwordHasher.hash(password));
     
     passwordLoginRepo.save(login);
   }
@@ -111,10 +112,18 @@ public class UserService extends AbstractService {
    * Creates a UserDto from a User.
    */
   public UserDto toDto(User user) {
+    return toDto(user.getName(), user.getLevel());
+  }
+
+  /**
+   * Creates a UserDto from the data of a user that has been selected by a projection query, so
+   * the user entity doesn't need to be loaded.
+   */
+  public UserDto toDto(String name, UserLevel level) {
     UserDto userDto = dtoFactory.createDto(UserDto.class);
 
-    userDto.setName(user.getName());
-    userDto.setLevel(user.getLevel());
+    userDto.setName(name);
+    userDto.setLevel(level);
 
     return userDto;
   }
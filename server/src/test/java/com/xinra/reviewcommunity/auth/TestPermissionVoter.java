@@ -0,0 +1,93 @@
+package com.xinra.reviewcommunity.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
+import com.xinra.reviewcommunity.service.AuthenticationProviderImpl;
+import com.xinra.reviewcommunity.shared.Permission;
+import com.xinra.reviewcommunity.shared.Role;
+import com.xinra.reviewcommunity.shared.UserLevel;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.Test;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.SecurityConfig;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+public class TestPermissionVoter {
+  
+  private final PermissionVoter voter = new PermissionVoter();
+  
+  private static Authentication authenticate(Role role) {
+    AuthenticatedUserDto user = new AuthenticatedUserDto();
+    user.setPk(() -> "user");
+    user.setName("user");
+    user.setRoles(Role.getAllTransitiveRoles(ImmutableSet.of(role)));
+    user.setPermissions(Role.getAllTransitivePermissions(user.getRoles()));
+    user.setLevel(UserLevel.getFromRoles(user.getRoles()));
+    user.setAuthorityMask(Role.getAuthorityMask(user.getRoles()));
+    return AuthenticationProviderImpl.getAuthentication(user);
+  }
+  
+  private int vote(Authentication authentication, AccessRequires accessRequires) {
+    return voter.vote(authentication, null,
+        new ArrayList<>(new AccessRequires.MetadataExtractor().extractAttributes(accessRequires)));
+  }
+  
+  @AccessRequires(Permission.DELETE_REVIEW)
+  private void deleteReview() {}
+  
+  @AccessRequires(roles = Role.ADMIN)
+  private void administrate() {}
+  
+  @AccessRequires(permissions = Permission.IMPORT_PRODUCTS, roles = Role.MODERATOR)
+  private void importOrModerate() {}
+  
+  private static AccessRequires annotation(String method) throws Exception {
+    return TestPermissionVoter.class.getDeclaredMethod(method).getAnnotation(AccessRequires.class);
+  }
+  
+  @Test
+  public void voteByAuthorityMask() throws Exception {
+    Authentication user = authenticate(Role.USER);
+    Authentication moderator = authenticate(Role.MODERATOR);
+    Authentication admin = authenticate(Role.ADMIN);
+    
+    assertThat(vote(user, annotation("deleteReview")))
+        .isEqualTo(AccessDecisionVoter.ACCESS_DENIED);
+    assertThat(vote(moderator, annotation("deleteReview")))
+        .isEqualTo(AccessDecisionVoter.ACCESS_GRANTED);
+    
+    assertThat(vote(moderator, annotation("administrate")))
+        .isEqualTo(AccessDecisionVoter.ACCESS_DENIED);
+    assertThat(vote(admin, annotation("administrate")))
+        .isEqualTo(AccessDecisionVoter.ACCESS_GRANTED);
+    
+    assertThat(vote(user, annotation("importOrModerate")))
+        .isEqualTo(AccessDecisionVoter.ACCESS_DENIED);
+    assertThat(vote(moderator, annotation("importOrModerate")))
+        .isEqualTo(AccessDecisionVoter.ACCESS_GRANTED);
+  }
+  
+  @Test
+  public void voteByGrantedAuthorities() {
+    // e.g. authentications that are not created by the AuthenticationProviderImpl
+    Authentication authentication
+        = new TestingAuthenticationToken("user", null, Permission.VOTE.toString());
+    
+    assertThat(voter.vote(authentication, null,
+        Collections.singletonList(new AuthorityMaskAttribute(Permission.VOTE.getMask()))))
+        .isEqualTo(AccessDecisionVoter.ACCESS_GRANTED);
+    assertThat(voter.vote(authentication, null,
+        Collections.singletonList(new AuthorityMaskAttribute(Role.USER.getMask()))))
+        .isEqualTo(AccessDecisionVoter.ACCESS_DENIED);
+    
+    // other attributes are left to the other voters
+    assertThat(voter.vote(authentication, null,
+        Collections.singletonList(new SecurityConfig("ROLE_USER"))))
+        .isEqualTo(AccessDecisionVoter.ACCESS_ABSTAIN);
+  }
+
+}
@@ -1,6 +1,9 @@
 package com.xinra.reviewcommunity.rest;
 
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import org.junit.Test;
@@ -26,4 +29,16 @@ public class TestAuthController {
         .andExpect(status().isOk());
   }
 
+  @Test
+  public void login() throws Exception {
+    mvc.perform(post("/api/session").param("username", "bob").param("password", "123")
+        .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.user.name").value("bob"));
+    
+    mvc.perform(post("/api/session").param("username", "bob").param("password", "456")
+        .with(csrf()))
+        .andExpect(status().isUnauthorized());
+  }
+
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.xinra.reviewcommunity.SampleContentGenerator;
@@ -49,7 +50,18 @@ public class TestCategoryController {
 
   @Test
   public void getAllCategories() throws Exception {
-    mvc.perform(get("/de/api/category")).andExpect(status().isOk());
+    // sample category 1 contains all five products, its child 4 contains three of them
+    mvc.perform(get("/de/api/category"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].serial").value(1))
+        .andExpect(jsonPath("$[0].numProducts").value(5))
+        .andExpect(jsonPath("$[0].children[1].serial").value(4))
+        .andExpect(jsonPath("$[0].children[1].numProducts").value(3));
+    
+    // the products are specific to the German market
+    mvc.perform(get("/us/api/category"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].numProducts").value(0));
   }
 
   @Test
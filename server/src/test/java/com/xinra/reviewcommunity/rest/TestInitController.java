@@ -1,6 +1,7 @@
 package com.xinra.reviewcommunity.rest;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import org.junit.Test;
@@ -23,7 +24,16 @@ public class TestInitController {
   @Test
   public void getInitData() throws Exception {
     mvc.perform(get("/de/api/init"))
-        .andExpect(status().isOk());
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.csrfToken.token").isNotEmpty())
+        .andExpect(jsonPath("$.markets.length()").value(2))
+        .andExpect(jsonPath("$.categoryTree[0].numProducts").value(5));
+    
+    // the cached sections must not leak into other markets
+    mvc.perform(get("/us/api/init"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.markets.length()").value(2))
+        .andExpect(jsonPath("$.categoryTree[0].numProducts").value(0));
   }
 
 }
@@ -1,21 +1,33 @@
 package com.xinra.reviewcommunity.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.xinra.reviewcommunity.SampleContentGenerator;
 import com.xinra.reviewcommunity.entity.Product;
 import com.xinra.reviewcommunity.repo.ProductRepository;
 import com.xinra.reviewcommunity.service.AuthenticationProviderImpl;
+import com.xinra.reviewcommunity.service.BarcodeService;
+import com.xinra.reviewcommunity.service.ReviewService;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.MethodMode;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -31,6 +43,8 @@ public class TestProductController {
   private @Autowired MockMvc mvc;
   private @Autowired ProductRepository<Product> productRepo;
   private @Autowired SampleContentGenerator sample;
+  private @Autowired ReviewService reviewService;
+  private @PersistenceContext EntityManager entityManager;
 
   @Test
   public void createProduct() throws Exception {
@@ -57,6 +71,237 @@ public class TestProductController {
   public void getProduct() throws Exception {
     mvc.perform(get("/de/api/product/1")).andExpect(status().isOk());
   }
+
+  @Test
+  public void searchProducts() throws Exception {
+    // products 3, 4 and 5 are of the brand Coca Cola, they have 3, 1 and 0 ratings
+    mvc.perform(get("/de/api/product?q=cola&orderBy=NUM_RATINGS&limit=2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(2))
+        .andExpect(jsonPath("$.products[0].serial").value(3))
+        .andExpect(jsonPath("$.products[1].serial").value(4));
+    
+    mvc.perform(get("/de/api/product?q=cola&orderBy=NUM_RATINGS&offset=2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(1))
+        .andExpect(jsonPath("$.products[0].serial").value(5));
+    
+    mvc.perform(get("/de/api/product?q=cola&orderBy=BLENDED"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(3));
+    
+    // the sample products are specific to the German market
+    mvc.perform(get("/us/api/product?q=cola"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(0));
+  }
+
+  /**
+   * The changed product is indexed explicitly, which isn't rolled back, so the context is
+   * discarded.
+   */
+  @Test
+  @DirtiesContext(methodMode = MethodMode.AFTER_METHOD)
+  public void searchProductsWithoutBrand() throws Exception {
+    Product product = productRepo.findBySerial(5);
+    product.setBrand(null);
+    productRepo.save(product);
+    FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+    fullTextEntityManager.index(product);
+    fullTextEntityManager.flushToIndexes();
+    
+    mvc.perform(get("/de/api/product?q=cola&orderBy=NUM_RATINGS"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(3))
+        .andExpect(jsonPath("$.products[0].brand.serial").value(2))
+        .andExpect(jsonPath("$.products[2].serial").value(5))
+        .andExpect(jsonPath("$.products[2].brand").doesNotExist());
+  }
+
+  @Test
+  public void searchProductsWithFacets() throws Exception {
+    // products 3, 4 and 5 are in category 5 and have average ratings of 4, 5 and none
+    mvc.perform(get("/de/api/product?q=cola"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.categories.length()").value(1))
+        .andExpect(jsonPath("$.categories[0].value").value(5))
+        .andExpect(jsonPath("$.categories[0].count").value(3))
+        .andExpect(jsonPath("$.brands[0].value").value(2))
+        .andExpect(jsonPath("$.brands[0].count").value(3))
+        .andExpect(jsonPath("$.ratings.length()").value(3));
+    
+    mvc.perform(get("/de/api/product?q=cola&stars=4"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(1))
+        .andExpect(jsonPath("$.products[0].serial").value(3))
+        .andExpect(jsonPath("$.ratings.length()").value(1));
+    
+    mvc.perform(get("/de/api/product?q=cola&category=3"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(0));
+    
+    // the products are in category 5, whose ancestors are 4 and 1
+    mvc.perform(get("/de/api/product?q=cola&category=1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(3));
+  }
+
+  @Test
+  public void getProductSerialByBarcode() throws Exception {
+    mvc.perform(get("/de/api/product/serial?barcode=dummy"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("1"));
+    
+    mvc.perform(get("/de/api/product/serial?barcode=4006381333931"))
+        .andExpect(status().isNotFound());
+    
+    // barcodes are specific to a market
+    mvc.perform(get("/us/api/product/serial?barcode=dummy"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void resolveBarcodes() throws Exception {
+    mvc.perform(post("/de/api/product/serial/batch").contentType("application/json")
+        .content("[\"dummy\", \"4006381333931\"]")
+        .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].barcode").value("dummy"))
+        .andExpect(jsonPath("$[0].status").value("FOUND"))
+        .andExpect(jsonPath("$[0].productSerial").value(1))
+        .andExpect(jsonPath("$[1].barcode").value("4006381333931"))
+        .andExpect(jsonPath("$[1].status").value("UNKNOWN"));
+    
+    final StringBuilder tooMany = new StringBuilder("[");
+    for (int i = 0; i <= BarcodeService.MAX_BATCH_SIZE; i++) {
+      tooMany.append(i == 0 ? "" : ",").append('"').append(i).append('"');
+    }
+    mvc.perform(post("/de/api/product/serial/batch").contentType("application/json")
+        .content(tooMany.append(']').toString())
+        .with(csrf()))
+        .andExpect(status().isBadRequest());
+    
+    mvc.perform(post("/de/api/product/serial/batch").contentType("application/json")
+        .content("[\"dummy\", null]")
+        .with(csrf()))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void suggestProducts() throws Exception {
+    // product 3 matches by its brand Coca Cola
+    mvc.perform(get("/de/api/product/suggest?prefix=Coc"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(3));
+    
+    mvc.perform(get("/de/api/product/suggest?prefix=coca%20ze"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].serial").value(4))
+        .andExpect(jsonPath("$[0].name").value("Coca Cola Zero"));
+    
+    mvc.perform(get("/us/api/product/suggest?prefix=coca"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(0));
+  }
+
+  @Test
+  public void getProductConditionally() throws Exception {
+    String etag = mvc.perform(get("/de/api/product/1"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Cache-Control", containsString("public")))
+        .andReturn().getResponse().getHeader("ETag");
+    
+    mvc.perform(get("/de/api/product/1").header("If-None-Match", etag))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+    
+    // the response for an authenticated user may differ
+    mvc.perform(get("/de/api/product/1").header("If-None-Match", etag)
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.user))))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Cache-Control", containsString("private")));
+    
+    // there is no version of a product that doesn't exist
+    mvc.perform(get("/de/api/product/99").header("If-None-Match", "0"))
+        .andExpect(status().isNotFound());
+  }
+  
+  @Test
+  public void getByCategory() throws Exception {
+    // sample category 4 has no products itself but its child category 5 has three
+    mvc.perform(get("/de/api/product").param("category", "4"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(3));
+  }
+  
+  @Test
+  public void ratingHistogram() throws Exception {
+    // sample product 3 has been rated with 5, 3 and 4 stars
+    mvc.perform(get("/de/api/product/3"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.numRatings").value(3))
+        .andExpect(jsonPath("$.avgRating").value(4.0))
+        .andExpect(jsonPath("$.ratingHistogram[0]").value(0))
+        .andExpect(jsonPath("$.ratingHistogram[2]").value(1))
+        .andExpect(jsonPath("$.ratingHistogram[4]").value(1));
+  }
+  
+  @Test
+  public void backfillRatingHistogram() throws Exception {
+    // product 3 as it was stored before the histogram existed
+    Product product = productRepo.findBySerial(3);
+    product.setNumThreeStarRatings(0);
+    product.setNumFourStarRatings(0);
+    product.setNumFiveStarRatings(0);
+    product.setAvgRating(0);
+    productRepo.save(product);
+    
+    reviewService.onApplicationEvent(null);
+    
+    product = productRepo.findBySerial(3);
+    assertThat(product.getNumThreeStarRatings())
+        .as("fill the histogram from the reviews")
+        .isEqualTo(1);
+    assertThat(product.getNumRatings()).isEqualTo(3);
+    assertThat(product.getAvgRating())
+        .as("derive the average from the histogram")
+        .isEqualTo(4.0);
+  }
+  
+  /**
+   * Imported products are committed (the import doesn't join the test transaction) and added to
+   * the in-memory category tree, barcode index and suggestions, so the context is discarded.
+   */
+  @Test
+  @DirtiesContext(methodMode = MethodMode.AFTER_METHOD)
+  public void importProducts() throws Exception {
+    String content = "{ \"name\": \"Imported 1\", \"categorySerial\": 1, \"barcode\": \"42\" }\n"
+        + "\n"
+        + "{ \"name\": \"Imported 2\", \"categorySerial\": 99 }\n"
+        + "{ \"name\": \"Imported 3\", \"categorySerial\": 1, \"barcode\": \"42\" }\n"
+        + "{ \"name\": \n"
+        + "{ \"name\": \"Imported 4\", \"categorySerial\": 2, \"brandSerial\": 1 }\n";
+
+    // only admins may import
+    mvc.perform(post("/de/api/product/import").contentType("application/x-ndjson")
+        .content(content)
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.user)))
+        .with(csrf()))
+        .andExpect(status().isForbidden());
+
+    mvc.perform(post("/de/api/product/import").contentType("application/x-ndjson")
+        .content(content)
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.admin)))
+        .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.numImported").value(2))
+        .andExpect(jsonPath("$.numFailed").value(3))
+        .andExpect(jsonPath("$.errors[0].row").value(3))
+        .andExpect(jsonPath("$.errors[1].row").value(4))
+        .andExpect(jsonPath("$.errors[2].row").value(5));
+  }
   
   @Test
   public void search() throws Exception {
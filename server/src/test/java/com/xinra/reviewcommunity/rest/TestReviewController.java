@@ -1,14 +1,22 @@
 package com.xinra.reviewcommunity.rest;
 
+import static org.junit.Assert.assertEquals;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.jayway.jsonpath.JsonPath;
 import com.xinra.reviewcommunity.SampleContentGenerator;
 import com.xinra.reviewcommunity.service.AuthenticationProviderImpl;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +25,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -28,6 +37,9 @@ public class TestReviewController {
 
   private @Autowired MockMvc mvc;
   private @Autowired SampleContentGenerator sample;
+  private @Autowired EntityManagerFactory entityManagerFactory;
+  private @Autowired ResponseCache responseCache;
+  private @PersistenceContext EntityManager entityManager;
   
   // TODO confirm actions at database level!
 
@@ -54,6 +66,49 @@ public class TestReviewController {
             .andExpect(status().isOk());
   }
 
+  @Test
+  public void getReviewPages() throws Exception {
+    // sample product 3 has three reviews
+    String firstPage = mvc.perform(get("/de/api/product/3/review?orderBy=DATE&limit=2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.reviews.length()").value(2))
+        .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+        .andReturn().getResponse().getContentAsString();
+    String cursor = JsonPath.read(firstPage, "$.nextCursor");
+    
+    mvc.perform(get("/de/api/product/3/review?orderBy=DATE&limit=2").param("cursor", cursor))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.reviews.length()").value(1))
+        .andExpect(jsonPath("$.nextCursor").isEmpty());
+    
+    // a cursor can't be used for another order
+    mvc.perform(get("/de/api/product/3/review?orderBy=RATING").param("cursor", cursor))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void getReviewsWithConstantQueryCount() throws Exception {
+    // sample product 3 has three reviews by different users, product 4 has one
+    long threeReviews = countStatements(get("/de/api/product/3/review?orderBy=DATE")
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.user))));
+    long oneReview = countStatements(get("/de/api/product/4/review?orderBy=DATE")
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.user))));
+    assertEquals(oneReview, threeReviews);
+  }
+
+  @Test
+  public void getReviewsFromCache() throws Exception {
+    String url = "/de/api/product/3/review?orderBy=RATING&limit=5";
+    String uncached = mvc.perform(get(url)).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    long hits = responseCache.stats().hitCount();
+    
+    String cached = mvc.perform(get(url)).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    assertEquals(uncached, cached);
+    assertEquals(hits + 1, responseCache.stats().hitCount());
+  }
+
   @Test
   public void deleteReview() throws Exception {
     mvc.perform(delete("/de/api/product/3/review/2")
@@ -79,6 +134,26 @@ public class TestReviewController {
             .andExpect(status().isOk());
   }
 
+  @Test
+  public void getReviewCommentsWithConstantQueryCount() throws Exception {
+    // sample review 1 has two comments, review 2 has one
+    long twoComments = countStatements(get("/de/api/product/3/review/1/comment"));
+    long oneComment = countStatements(get("/de/api/product/3/review/2/comment"));
+    assertEquals(oneComment, twoComments);
+  }
+
+  /**
+   * Performs a request with an empty persistence context and returns the number of executed
+   * statements.
+   */
+  private long countStatements(RequestBuilder request) throws Exception {
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    entityManager.clear();
+    statistics.clear();
+    mvc.perform(request).andExpect(status().isOk());
+    return statistics.getPrepareStatementCount();
+  }
+
   @Test
   public void deleteComment() throws Exception {
     mvc.perform(delete("/de/api/product/3/review/1/comment/1")
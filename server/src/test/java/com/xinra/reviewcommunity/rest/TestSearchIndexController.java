@@ -0,0 +1,40 @@
+package com.xinra.reviewcommunity.rest;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.xinra.reviewcommunity.SampleContentGenerator;
+import com.xinra.reviewcommunity.service.AuthenticationProviderImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+public class TestSearchIndexController {
+
+  private @Autowired MockMvc mvc;
+  private @Autowired SampleContentGenerator sample;
+
+  @Test
+  public void getStatus() throws Exception {
+    mvc.perform(get("/de/api/search-index")
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.moderator))))
+        .andExpect(status().isForbidden());
+
+    // the in-memory index of the tests is rebuilt synchronously on startup
+    mvc.perform(get("/de/api/search-index")
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.admin))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.state").value("READY"));
+  }
+}
@@ -0,0 +1,56 @@
+package com.xinra.reviewcommunity.rest;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(properties = {
+    "reviewcommunity.session-token.enabled=true",
+    "reviewcommunity.session-token.secret=c2VjcmV0LWZvci10ZXN0aW5nLXNlc3Npb24tdG9rZW5zIQ=="
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+public class TestSessionTokens {
+
+  private @Autowired MockMvc mvc;
+
+  @Test
+  public void authenticateWithToken() throws Exception {
+    String response = mvc.perform(post("/api/session")
+        .param("username", "bob").param("password", "123")
+        .with(csrf()))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    String token = JsonPath.read(response, "$.sessionToken");
+    
+    mvc.perform(get("/de/api/init").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.authenticatedUser.name").value("bob"));
+    
+    // tampered tokens are rejected
+    mvc.perform(get("/de/api/init").header("Authorization", "Bearer x" + token))
+        .andExpect(status().isUnauthorized());
+    
+    // requests with a token don't need a CSRF token
+    mvc.perform(delete("/api/session").header("Authorization", "Bearer " + token))
+        .andExpect(status().isOk());
+    
+    mvc.perform(get("/de/api/init").header("Authorization", "Bearer " + token))
+        .andExpect(status().isUnauthorized());
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.xinra.reviewcommunity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestLongIntHashMap {
+  
+  private static final int MISSING = -1;
+  
+  @Test
+  public void putGetRemove() {
+    LongIntHashMap map = new LongIntHashMap(0, MISSING);
+    map.put(4006381333931L, 1);
+    map.put(0, 2);
+    map.put(-7, 3);
+    
+    assertThat(map.get(4006381333931L)).isEqualTo(1);
+    assertThat(map.get(0)).isEqualTo(2);
+    assertThat(map.get(-7)).isEqualTo(3);
+    assertThat(map.get(42)).isEqualTo(MISSING);
+    assertThat(map.size()).isEqualTo(3);
+    
+    map.put(-7, 4);
+    map.remove(0);
+    map.remove(42);
+    
+    assertThat(map.get(-7)).isEqualTo(4);
+    assertThat(map.get(0)).isEqualTo(MISSING);
+    assertThat(map.size()).isEqualTo(2);
+  }
+  
+  @Test
+  public void behavesLikeHashMap() {
+    // few distinct keys cause many collisions, removals and resizes
+    final Random random = new Random(42);
+    final LongIntHashMap map = new LongIntHashMap(0, MISSING);
+    final Map<Long, Integer> expected = new HashMap<>();
+    
+    for (int i = 0; i < 100000; i++) {
+      long key = random.nextInt(500);
+      if (random.nextBoolean()) {
+        map.put(key, i);
+        expected.put(key, i);
+      } else {
+        map.remove(key);
+        expected.remove(key);
+      }
+    }
+    
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (long key = 0; key < 500; key++) {
+      assertThat(map.get(key)).isEqualTo(expected.getOrDefault(key, MISSING));
+    }
+  }
+
+}
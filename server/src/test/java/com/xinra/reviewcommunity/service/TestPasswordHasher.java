@@ -0,0 +1,88 @@
+package com.xinra.reviewcommunity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.xinra.reviewcommunity.service.PasswordHasher.PasswordHasherBusyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SpringBootTest(properties = "reviewcommunity.password.bcrypt-cost=5")
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+public class TestPasswordHasher {
+  
+  private @Autowired PasswordHasher passwordHasher;
+  
+  @Test
+  public void hashAndVerify() {
+    String hash = passwordHasher.hash("secret");
+    
+    assertThat(hash).startsWith("$2a$05$");
+    assertThat(passwordHasher.verify("someone", "secret", hash)).isTrue();
+    assertThat(passwordHasher.verify("someone", "Secret", hash)).isFalse();
+  }
+  
+  @Test
+  public void needsRehash() {
+    assertThat(passwordHasher.needsRehash(BCrypt.hashpw("secret", BCrypt.gensalt(5)))).isFalse();
+    assertThat(passwordHasher.needsRehash(BCrypt.hashpw("secret", BCrypt.gensalt(4)))).isTrue();
+    assertThat(passwordHasher.needsRehash("malformed")).isTrue();
+  }
+  
+  /**
+   * Identical verifications that are rejected by a full executor must not wait for each other.
+   */
+  @Test(timeout = 10000)
+  public void rejectSharedVerification() throws Exception {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(1);
+    executor.setMaxPoolSize(1);
+    executor.setQueueCapacity(0);
+    executor.initialize();
+    PasswordHasher hasher = new PasswordHasher();
+    ReflectionTestUtils.setField(hasher, "executor", executor);
+    ReflectionTestUtils.setField(hasher, "cost", 4);
+    ReflectionTestUtils.setField(hasher, "timeout", 60000L);
+    
+    String hash = BCrypt.hashpw("secret", BCrypt.gensalt(4));
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService clients = Executors.newFixedThreadPool(2);
+    try {
+      // occupies the only thread
+      executor.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        results.add(clients.submit(() -> hasher.verify("someone", "secret", hash)));
+      }
+      for (Future<Boolean> result : results) {
+        assertThatThrownBy(result::get).hasCauseInstanceOf(PasswordHasherBusyException.class);
+      }
+    } finally {
+      release.countDown();
+      clients.shutdown();
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.xinra.reviewcommunity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The scheduled flush only runs at startup, so the tests decide when to flush.
+ */
+@SpringBootTest(properties = "reviewcommunity.search.flush-interval=3600000")
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+public class TestProductIndexQueue {
+
+  private @Autowired ProductIndexQueue queue;
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired PlatformTransactionManager transactionManager;
+
+  @Before
+  public void flushSampleProducts() {
+    queue.flush();
+  }
+
+  @Test
+  public void coalesceChanges() {
+    Product product = productRepo.findBySerialRange(1, 1).get(0);
+    new TransactionTemplate(transactionManager).execute(status -> {
+      queue.onEntityUpdate(product);
+      queue.onEntityUpdate(product);
+      return null;
+    });
+    queue.addAll(Arrays.asList(product.getPk().getId()), System.currentTimeMillis());
+    
+    assertThat(getMetric("search.index.pending")).isEqualTo(1L);
+    queue.flush();
+    assertThat(getMetric("search.index.pending")).isEqualTo(0L);
+  }
+
+  @Test
+  public void flushIfFull() {
+    // sample products 1 to 5
+    List<String> ids = getProductIds();
+    ReflectionTestUtils.setField(queue, "maxPending", ids.size() - 1);
+    try {
+      queue.addAll(ids, System.currentTimeMillis());
+    } finally {
+      ReflectionTestUtils.setField(queue, "maxPending", 10000);
+    }
+    
+    // the scheduled flush doesn't run, so the queue has been flushed by the caller
+    assertThat(getMetric("search.index.pending")).isEqualTo(0L);
+  }
+
+  @Test
+  public void retryFailedFlush() {
+    List<String> ids = getProductIds();
+    queue.addAll(ids, System.currentTimeMillis());
+    
+    ReflectionTestUtils.setField(queue, "productRepo", Mockito.mock(ProductRepository.class,
+        invocation -> {
+          throw new IllegalStateException("database not available");
+        }));
+    try {
+      queue.flush();
+    } finally {
+      ReflectionTestUtils.setField(queue, "productRepo", productRepo);
+    }
+    assertThat(getMetric("search.index.pending")).isEqualTo((long) ids.size());
+    
+    queue.flush();
+    assertThat(getMetric("search.index.pending")).isEqualTo(0L);
+  }
+
+  @Test
+  public void reportLag() {
+    queue.addAll(getProductIds(), System.currentTimeMillis() - 60000);
+    assertThat(getMetric("search.index.lag")).isGreaterThanOrEqualTo(60000L);
+    
+    queue.flush();
+    assertThat(getMetric("search.index.lag")).isEqualTo(0L);
+  }
+
+  private List<String> getProductIds() {
+    return productRepo.findBySerialRange(1, 5).stream()
+        .map(product -> product.getPk().getId())
+        .collect(Collectors.toList());
+  }
+
+  private long getMetric(String name) {
+    return queue.metrics().stream()
+        .filter(metric -> metric.getName().equals(name))
+        .mapToLong(metric -> metric.getValue().longValue())
+        .findFirst().getAsLong();
+  }
+
+}
@@ -0,0 +1,45 @@
+package com.xinra.reviewcommunity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class TestReloadableState {
+
+  @Test
+  public void keepChangesDuringReload() {
+    final ReloadableState<Map<String, Integer>> state = new ReloadableState<>(new HashMap<>());
+    state.change(map -> map.put("before", 1));
+    
+    state.reload(() -> {
+      final Map<String, Integer> loaded = new HashMap<>();
+      loaded.put("loaded", 2);
+      // committed after the database has been read
+      state.change(map -> map.put("during", 3));
+      return loaded;
+    });
+    state.change(map -> map.put("after", 4));
+    
+    assertThat(state.get()).containsOnlyKeys("loaded", "during", "after");
+  }
+
+  @Test
+  public void keepStateIfReloadFails() {
+    final ReloadableState<Map<String, Integer>> state = new ReloadableState<>(new HashMap<>());
+    state.change(map -> map.put("before", 1));
+    
+    try {
+      state.reload(() -> {
+        throw new IllegalStateException("database not available");
+      });
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+    state.change(map -> map.put("after", 2));
+    
+    assertThat(state.get()).containsOnlyKeys("before", "after");
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.xinra.reviewcommunity.service;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.xinra.nucleus.entity.EntityFactory;
+import com.xinra.reviewcommunity.SampleContentGenerator;
+import com.xinra.reviewcommunity.dto.AuthenticatedUserDto;
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.entity.Review;
+import com.xinra.reviewcommunity.entity.ReviewVote;
+import com.xinra.reviewcommunity.entity.User;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import com.xinra.reviewcommunity.repo.ReviewRepository;
+import com.xinra.reviewcommunity.repo.ReviewVoteRepository;
+import com.xinra.reviewcommunity.repo.UserRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Votes are committed by these tests (otherwise they would never become pending), so the context
+ * isn't reused. The scheduled flush only runs at startup, so the tests decide when to flush.
+ */
+@SpringBootTest(properties = "reviewcommunity.vote.flush-interval=3600000")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@DirtiesContext
+public class TestReviewVoteAccumulator {
+
+  private @Autowired MockMvc mvc;
+  private @Autowired SampleContentGenerator sample;
+  private @Autowired ReviewVoteAccumulator voteAccumulator;
+  private @Autowired ReviewRepository<Review> reviewRepo;
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired ReviewVoteRepository<ReviewVote> voteRepo;
+  private @Autowired UserRepository<User> userRepo;
+  private @Autowired EntityFactory entityFactory;
+  private @Autowired PlatformTransactionManager transactionManager;
+
+  @Before
+  public void flushSampleVotes() {
+    voteAccumulator.flush();
+  }
+
+  @Test
+  public void countVotes() throws Exception {
+    // sample review 2 of product 3 has one upvote and one downvote, not by the admin
+    vote(sample.admin, 2, true);
+    
+    // the pending vote is visible right away
+    mvc.perform(get("/de/api/product/3/review?orderBy=DATE"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.reviews[?(@.serial == 2)].numUpvotes", contains(2)))
+        .andExpect(jsonPath("$.reviews[?(@.serial == 2)].numDownvotes", contains(1)));
+    assertEquals(1, reviewRepo.findBySerialAndProductSerial(2, 3).getNumUpvotes());
+    
+    voteAccumulator.flush();
+    
+    Review review = reviewRepo.findBySerialAndProductSerial(2, 3);
+    assertEquals(2, review.getNumUpvotes());
+    assertEquals(1, review.getNumDownvotes());
+    assertEquals(ScoreUtil.fromVotes(2, 1), review.getScore(), 0);
+  }
+
+  @Test
+  public void reconcile() throws Exception {
+    // sample review 1 of product 3 has two upvotes and one downvote
+    String reviewId = reviewRepo.findBySerialAndProductSerial(1, 3).getPk().getId();
+    new TransactionTemplate(transactionManager).execute(status -> {
+      reviewRepo.setVotes(reviewId, 7, 7, 0);
+      return null;
+    });
+    
+    voteAccumulator.reconcile();
+    
+    Review review = reviewRepo.findBySerialAndProductSerial(1, 3);
+    assertEquals(2, review.getNumUpvotes());
+    assertEquals(1, review.getNumDownvotes());
+    assertEquals(ScoreUtil.fromVotes(2, 1), review.getScore(), 0);
+  }
+
+  @Test
+  public void countVotesPendingOnOtherInstances() throws Exception {
+    // sample review 3 of product 3 has no votes by the admin and the moderator
+    Review review = reviewRepo.findBySerialAndProductSerial(3, 3);
+    int upvotes = review.getNumUpvotes();
+    
+    // a vote on another instance, which adds it to the counts with its own flush
+    new TransactionTemplate(transactionManager).execute(status -> {
+      ReviewVote vote = entityFactory.createEntity(ReviewVote.class);
+      vote.setUpvote(true);
+      vote.setReview(review);
+      vote.setUser(userRepo.findOne(sample.moderator.getPk()));
+      voteRepo.save(vote);
+      return null;
+    });
+    vote(sample.admin, 3, true);
+    
+    voteAccumulator.flush();
+    assertEquals(upvotes + 2, reviewRepo.findBySerialAndProductSerial(3, 3).getNumUpvotes());
+    
+    // the flush of the other instance recounts as well, so its vote isn't counted twice
+    voteAccumulator.reconcile();
+    assertEquals(upvotes + 2, reviewRepo.findBySerialAndProductSerial(3, 3).getNumUpvotes());
+  }
+
+  @Test
+  public void flushChangesVersion() throws Exception {
+    // sample review 3 of product 3 has no votes
+    vote(sample.user, 3, true);
+    String url = "/de/api/product/3/review?orderBy=RATING";
+    String beforeFlush = mvc.perform(get(url)).andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    
+    voteAccumulator.flush();
+    
+    String afterFlush = mvc.perform(get(url)).andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    assertNotEquals(beforeFlush, afterFlush);
+  }
+
+  @Test
+  public void writeVersionOncePerFlush() throws Exception {
+    long before = productRepo.findBySerial(3).getContentVersion();
+    comment(1);
+    comment(2);
+    assertEquals("versions are written with the flush", before,
+        productRepo.findBySerial(3).getContentVersion());
+    
+    voteAccumulator.flush();
+    
+    assertEquals(before + 1, productRepo.findBySerial(3).getContentVersion());
+  }
+
+  private void comment(int reviewSerial) throws Exception {
+    mvc.perform(post("/de/api/product/3/review/" + reviewSerial + "/comment")
+        .contentType("application/json").content("{ \"text\": \"Thanks\" }")
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(sample.user)))
+        .with(csrf()))
+        .andExpect(status().isOk());
+  }
+
+  private void vote(AuthenticatedUserDto user, int reviewSerial, boolean upvote)
+      throws Exception {
+    mvc.perform(post("/de/api/product/3/review/" + reviewSerial + "/vote")
+        .contentType("application/json").content("{ \"upvote\": " + upvote + " }")
+        .with(authentication(AuthenticationProviderImpl.getAuthentication(user)))
+        .with(csrf()))
+        .andExpect(status().isOk());
+  }
+
+}
@@ -30,6 +30,7 @@ public class TestScoreUtil {
   @Test
   public void fromVotes() {
     assertThat(ScoreUtil.fromVotes(0, 0)).isCloseTo(0, OFFSET);
+    assertThat(ScoreUtil.fromVotes(10, 0)).isGreaterThan(ScoreUtil.fromVotes(9, 1));
   }
 
 
@@ -0,0 +1,199 @@
+package com.xinra.reviewcommunity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.xinra.reviewcommunity.entity.Product;
+import com.xinra.reviewcommunity.repo.ProductRepository;
+import com.xinra.reviewcommunity.shared.SearchIndexState;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.hibernate.search.jpa.FullTextEntityManager;
+import org.hibernate.search.jpa.Search;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Uses a persistent index in a temporary directory. Checkpoints are only written by the tests and
+ * without margin, so products that changed before a checkpoint are not caught up on.
+ */
+@SpringBootTest(properties = {
+    "reviewcommunity.search.checkpoint-interval=3600000",
+    "reviewcommunity.search.checkpoint-margin=0"
+})
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@DirtiesContext
+public class TestSearchIndexManager {
+
+  private static final String DIRECTORY_PROVIDER
+      = "spring.jpa.properties.hibernate.search.default.directory_provider";
+  private static final String INDEX_BASE
+      = "spring.jpa.properties.hibernate.search.default.indexBase";
+
+  @ClassRule
+  public static final TemporaryFolder indexBase = new TemporaryFolder();
+
+  private @Autowired SearchIndexManager manager;
+  private @Autowired ProductIndexQueue indexQueue;
+  private @Autowired ProductRepository<Product> productRepo;
+  private @Autowired PlatformTransactionManager transactionManager;
+  private @PersistenceContext EntityManager entityManager;
+
+  /**
+   * The directory is only known at runtime, so it is passed as system properties, which take
+   * precedence over the properties of the test profile.
+   */
+  @BeforeClass
+  public static void usePersistentIndex() {
+    System.setProperty(DIRECTORY_PROVIDER, "filesystem");
+    System.setProperty(INDEX_BASE, indexBase.getRoot().getAbsolutePath());
+  }
+
+  @AfterClass
+  public static void clearProperties() {
+    System.clearProperty(DIRECTORY_PROVIDER);
+    System.clearProperty(INDEX_BASE);
+  }
+
+  /**
+   * Waits until the index has been built on startup and lets the manager work synchronously.
+   */
+  @Before
+  public void awaitIndex() throws Exception {
+    for (int i = 0; i < 1000 && manager.getState() != SearchIndexState.READY; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(manager.getState()).isEqualTo(SearchIndexState.READY);
+    ReflectionTestUtils.setField(manager, "executor", (Executor) Runnable::run);
+  }
+
+  @Test
+  public void writeAndReadCheckpoint() throws Exception {
+    manager.writeCheckpoint();
+    Properties checkpoint = readCheckpoint();
+    assertThat(Long.parseLong(checkpoint.getProperty("indexedUntil")))
+        .isLessThanOrEqualTo(System.currentTimeMillis());
+    assertThat(checkpoint.getProperty("fingerprint")).isNotEmpty();
+    
+    Object progress = getProgress();
+    manager.start();
+    
+    assertThat(manager.getState()).isEqualTo(SearchIndexState.READY);
+    assertThat(getProgress()).isSameAs(progress);
+  }
+
+  @Test
+  public void rebuildIfFingerprintDiffers() throws Exception {
+    manager.writeCheckpoint();
+    Properties checkpoint = readCheckpoint();
+    checkpoint.setProperty("fingerprint", "another database");
+    try (OutputStream out = Files.newOutputStream(getCheckpointPath())) {
+      checkpoint.store(out, null);
+    }
+    
+    Object progress = getProgress();
+    manager.start();
+    
+    assertThat(manager.getState()).isEqualTo(SearchIndexState.READY);
+    assertThat(getProgress()).isNotSameAs(progress);
+    assertThat(manager.getNumIndexed()).isEqualTo(productRepo.count());
+  }
+
+  @Test
+  public void catchUpOnChangedProducts() throws Exception {
+    manager.writeCheckpoint();
+    // the update time must be later than the checkpoint
+    Thread.sleep(10);
+    
+    // not indexed, as if the application had stopped before the queue was flushed
+    indexQueue.suspend();
+    try {
+      new TransactionTemplate(transactionManager).execute(status -> {
+        productRepo.findBySerialRange(1, 1).get(0).setName("Caught up");
+        return null;
+      });
+    } finally {
+      indexQueue.resume();
+    }
+    assertThat(countIndexedProducts(new TermQuery(new Term("name", "caught")))).isEqualTo(0);
+    
+    Object progress = getProgress();
+    manager.start();
+    
+    assertThat(manager.getState()).isEqualTo(SearchIndexState.READY);
+    assertThat(getProgress()).isSameAs(progress);
+    assertThat(countIndexedProducts(new TermQuery(new Term("name", "caught")))).isEqualTo(1);
+  }
+
+  @Test
+  public void rebuildIfProductIsMissing() throws Exception {
+    manager.writeCheckpoint();
+    
+    // an unchanged product that isn't indexed can't be found by catching up
+    String id = productRepo.findBySerialRange(2, 2).get(0).getPk().getId();
+    new TransactionTemplate(transactionManager).execute(status -> {
+      FullTextEntityManager fullTextEntityManager = Search.getFullTextEntityManager(entityManager);
+      fullTextEntityManager.purge(Product.class, id);
+      fullTextEntityManager.flushToIndexes();
+      return null;
+    });
+    assertThat(countIndexedProducts(new MatchAllDocsQuery())).isEqualTo(productRepo.count() - 1);
+    
+    Object progress = getProgress();
+    manager.start();
+    
+    assertThat(manager.getState()).isEqualTo(SearchIndexState.READY);
+    assertThat(getProgress()).isNotSameAs(progress);
+    assertThat(countIndexedProducts(new MatchAllDocsQuery())).isEqualTo(productRepo.count());
+  }
+
+  private Path getCheckpointPath() {
+    return indexBase.getRoot().toPath().resolve("checkpoint.properties");
+  }
+
+  private Properties readCheckpoint() throws Exception {
+    Properties checkpoint = new Properties();
+    try (InputStream in = Files.newInputStream(getCheckpointPath())) {
+      checkpoint.load(in);
+    }
+    return checkpoint;
+  }
+
+  /**
+   * A new progress is created by each rebuild.
+   */
+  private Object getProgress() {
+    return ReflectionTestUtils.getField(manager, "progress");
+  }
+
+  private long countIndexedProducts(Query query) {
+    return new TransactionTemplate(transactionManager).execute(status ->
+        (long) Search.getFullTextEntityManager(entityManager)
+            .createFullTextQuery(query, Product.class)
+            .getResultSize());
+  }
+
+}
@@ -5,8 +5,19 @@ import static org.assertj.core.api.Assertions.assertThat;
 import com.xinra.nucleus.entity.EntityPk;
 import com.xinra.nucleus.service.ServiceProvider;
 import com.xinra.reviewcommunity.SampleMarketSpecificEntity;
+import com.xinra.reviewcommunity.entity.Product;
 import com.xinra.reviewcommunity.entity.SerialEntity;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +31,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
+@Slf4j
 @Transactional
 @SpringBootTest
 @ActiveProfiles("test")
@@ -47,6 +59,93 @@ public class TestSerialService {
     test(() -> serialService.getNextChildSerial(entityPk, name));
   }
   
+  @Test
+  public void topLevelSerialConcurrently() throws Exception {
+    final SerialService serialService = serviceProvider.getService(SerialService.class);
+    final int numThreads = 8;
+    final int serialsPerThread = 250;
+    
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    final List<Future<List<Integer>>> futures = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      futures.add(executor.submit(() -> {
+        List<Integer> serials = new ArrayList<>(serialsPerThread);
+        for (int j = 0; j < serialsPerThread; j++) {
+          serials.add(serialService.getNextSerial(ConcurrentlyUsedEntity.class));
+        }
+        return serials;
+      }));
+    }
+    
+    final Set<Integer> serials = new HashSet<>();
+    for (Future<List<Integer>> future : futures) {
+      serials.addAll(future.get());
+    }
+    executor.shutdown();
+    
+    assertThat(serials)
+      .as("hand out every serial only once")
+      .hasSize(numThreads * serialsPerThread);
+    
+    assertThat(Collections.max(serials))
+      .as("don't skip serials within one node")
+      .isEqualTo(numThreads * serialsPerThread);
+  }
+  
+  /**
+   * Simulates a burst of reviews on a single product. The number of concurrent writers is doubled
+   * each round and the throughput is logged.
+   * 
+   * <p>This is a benchmark and only runs if the system property {@code benchmarks} is set, e.g.
+   * with {@code ./gradlew :server:test -Pbenchmarks}.
+   */
+  @Test
+  public void childSerialThroughput() throws Exception {
+    Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+    
+    final SerialService serialService = serviceProvider.getService(SerialService.class);
+    final EntityPk productPk = () -> "hot-product";
+    final int serialsPerRound = 640;
+    int lastSerial = 0;
+    
+    for (int numWriters = 1; numWriters <= 64; numWriters *= 2) {
+      final int serialsPerWriter = serialsPerRound / numWriters;
+      final ExecutorService executor = Executors.newFixedThreadPool(numWriters);
+      final List<Future<List<Integer>>> futures = new ArrayList<>();
+      final long start = System.nanoTime();
+      
+      for (int i = 0; i < numWriters; i++) {
+        futures.add(executor.submit(() -> {
+          List<Integer> serials = new ArrayList<>(serialsPerWriter);
+          for (int j = 0; j < serialsPerWriter; j++) {
+            serials.add(serialService.getNextChildSerial(productPk, Product.REVIEW));
+          }
+          return serials;
+        }));
+      }
+      
+      final Set<Integer> serials = new HashSet<>();
+      for (Future<List<Integer>> future : futures) {
+        serials.addAll(future.get());
+      }
+      final long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+      executor.shutdown();
+      
+      log.info("{} concurrent writers: {} review serials in {} ms ({} per second)", numWriters,
+          serials.size(), elapsedMillis, serials.size() * 1000 / elapsedMillis);
+      
+      assertThat(serials)
+        .as("hand out every child serial only once")
+        .hasSize(numWriters * serialsPerWriter);
+      
+      assertThat(Collections.max(serials))
+        .as("don't skip child serials")
+        .isEqualTo(lastSerial + serials.size());
+      
+      lastSerial += serials.size();
+    }
+  }
+  
   private void test(Supplier<Integer> serviceMethod) {
     assertThat(serviceMethod.get())
       .as("create serial and set to 1, if there is none")
@@ -71,4 +170,9 @@ public class TestSerialService {
       .isEqualTo(4);
   }
   
+  /**
+   * Serials are only keyed by class, so this doesn't need to be an entity.
+   */
+  private static class ConcurrentlyUsedEntity extends SerialEntity {}
+  
 }
@@ -0,0 +1,19 @@
+package com.xinra.reviewcommunity.shared;
+
+public enum BarcodeStatus {
+
+  /**
+   * The barcode belongs to a product.
+   */
+  FOUND,
+  
+  /**
+   * The barcode is unknown to this application.
+   */
+  UNKNOWN,
+  
+  /**
+   * The product with this barcode is not in the scope of this application.
+   */
+  OUT_OF_SCOPE
+}
@@ -1,10 +1,16 @@
 package com.xinra.reviewcommunity.shared;
 
+/**
+ * Permissions are granted by {@link Role}s. Besides the enum, each permission is represented by a
+ * bit of an authority mask (see {@link Role#getAuthorityMask(java.util.Collection)}).
+ */
 public enum Permission {
 
   CREATE_PRODUCT,
   EDIT_PRODUCT,
   DELETE_PRODUCT,
+  IMPORT_PRODUCTS,
+  MANAGE_SEARCH_INDEX,
 
   CREATE_REVIEW,
   DELETE_REVIEW,
@@ -15,5 +21,25 @@ public enum Permission {
   CREATE_BRAND,
   CREATE_CATEGORY,
 
-  VOTE
+  VOTE;
+  
+  /**
+   * Permissions occupy the lower bits of an authority mask, roles the upper ones.
+   */
+  static final int MAX_PERMISSIONS = 32;
+  
+  static {
+    if (values().length > MAX_PERMISSIONS) {
+      throw new AssertionError("Authority masks can't hold more than " + MAX_PERMISSIONS
+          + " permissions");
+    }
+  }
+  
+  /**
+   * Returns the bit of this permission in an authority mask.
+   */
+  public long getMask() {
+    return 1L << ordinal();
+  }
+  
 }
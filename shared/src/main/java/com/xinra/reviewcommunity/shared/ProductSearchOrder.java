@@ -0,0 +1,27 @@
+package com.xinra.reviewcommunity.shared;
+
+/**
+ * Order of product search results.
+ */
+public enum ProductSearchOrder {
+
+  /**
+   * How well the product matches the query.
+   */
+  RELEVANCE,
+  
+  /**
+   * The score of the product's ratings, ties are ordered by relevance.
+   */
+  SCORE,
+  
+  /**
+   * The number of ratings, ties are ordered by relevance.
+   */
+  NUM_RATINGS,
+  
+  /**
+   * Relevance boosted by the score of the product's ratings.
+   */
+  BLENDED
+}
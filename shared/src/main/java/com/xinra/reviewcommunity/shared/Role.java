@@ -7,16 +7,18 @@ import java.util.HashSet;
 import java.util.Set;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
  * A role is a set of {@link Permission}s. Permissions can be inherited from one or more roles.
  * Each user can have multiple roles.
  * 
+ * <p>Roles and permissions are also represented by bits of an authority mask (see
+ * {@link #getAuthorityMask(Collection)}), so that checking whether a user has one of several
+ * authorities takes a single AND operation.
+ * 
  * @see UserLevel
  */
 @Getter
-@RequiredArgsConstructor
 public enum Role {
   
   // New roles can be added here.
@@ -46,7 +48,8 @@ public enum Role {
   ADMIN(
     inheritsFrom(MODERATOR),
     addsPermissions(
-      
+      Permission.IMPORT_PRODUCTS,
+      Permission.MANAGE_SEARCH_INDEX
     )
   );
 
@@ -58,6 +61,17 @@ public enum Role {
     return ImmutableSet.copyOf(permissions);
   }
   
+  /**
+   * Returns the combined authority mask (see {@link #getAuthorityMask()}) of a collection of roles.
+   */
+  public static long getAuthorityMask(@NonNull Collection<Role> roles) {
+    long mask = 0;
+    for (Role role : roles) {
+      mask |= role.authorityMask;
+    }
+    return mask;
+  }
+  
   /**
    * Returns all the transitive roles (see {@link #getTransitiveRoles()}) of a collection of roles
    * combined into one enum set.
@@ -86,39 +100,61 @@ public enum Role {
   
   private final ImmutableSet<Role> parents;
   private final ImmutableSet<Permission> permissions;
-  private ImmutableSet<Role> transitiveRoles;
-  private ImmutableSet<Permission> transitivePermissions;
   
   /**
-   * Returns an enum set of this role as well of all roles that are inherited.
+   * This role as well as all roles that are inherited. This is not an enum set, because those
+   * can't be created before all constants of the enum are.
+   */
+  private final ImmutableSet<Role> transitiveRoles;
+  
+  /**
+   * An enum set of all permissions that are granted to this role. This includes inherited
+   * permissions.
+   */
+  private final ImmutableSet<Permission> transitivePermissions;
+  
+  /**
+   * The bits of the transitive roles and permissions.
+   */
+  private final long authorityMask;
+  
+  /**
+   * Computes the transitive roles and permissions once, so they can be read from any thread.
+   * Parents are declared before their children, so they are already complete. This also means
+   * that it is not possible to declare circular inheritance.
    */
-  public ImmutableSet<Role> getTransitiveRoles() {
-    if (transitiveRoles == null) {
-      Set<Role> transitiveRoles = new HashSet<>();
-      transitiveRoles.add(this);
-      // it is not possible to declare circular inheritance
-      for (Role child: parents) {
-        transitiveRoles.addAll(child.getTransitiveRoles());
-      }
-      this.transitiveRoles = Sets.immutableEnumSet(transitiveRoles);
+  Role(ImmutableSet<Role> parents, ImmutableSet<Permission> permissions) {
+    if (ordinal() >= Long.SIZE - Permission.MAX_PERMISSIONS) {
+      throw new AssertionError("Authority masks can't hold more roles");
     }
-    return transitiveRoles;
+    this.parents = parents;
+    this.permissions = permissions;
+    
+    Set<Role> transitiveRoles = new HashSet<>();
+    transitiveRoles.add(this);
+    Set<Permission> transitivePermissions = new HashSet<>(permissions);
+    for (Role parent : parents) {
+      transitiveRoles.addAll(parent.transitiveRoles);
+      transitivePermissions.addAll(parent.transitivePermissions);
+    }
+    this.transitiveRoles = ImmutableSet.copyOf(transitiveRoles);
+    this.transitivePermissions = Sets.immutableEnumSet(transitivePermissions);
+    
+    long authorityMask = 0;
+    for (Role role : this.transitiveRoles) {
+      authorityMask |= role.getMask();
+    }
+    for (Permission permission : this.transitivePermissions) {
+      authorityMask |= permission.getMask();
+    }
+    this.authorityMask = authorityMask;
   }
   
   /**
-   * Returns an enum set of all permissions that are granted to this role.
-   * This includes inherited permissions.
+   * Returns the bit of this role in an authority mask.
    */
-  public ImmutableSet<Permission> getTransitivePermissions() {
-    if (transitivePermissions == null) {
-      Set<Permission> transitivePermissions = new HashSet<>();
-      transitivePermissions.addAll(permissions);
-      for (Role child: parents) {
-        transitivePermissions.addAll(child.getTransitivePermissions());
-      }
-      this.transitivePermissions = Sets.immutableEnumSet(transitivePermissions);
-    }
-    return transitivePermissions;
+  public long getMask() {
+    return 1L << (Permission.MAX_PERMISSIONS + ordinal());
   }
   
   /**
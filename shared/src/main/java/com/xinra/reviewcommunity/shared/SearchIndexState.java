@@ -0,0 +1,26 @@
+package com.xinra.reviewcommunity.shared;
+
+public enum SearchIndexState {
+
+  /**
+   * The index hasn't been checked against the database yet.
+   */
+  STARTING,
+  
+  /**
+   * All products are being indexed from scratch. Search results are incomplete meanwhile.
+   */
+  REBUILDING,
+  
+  /**
+   * Products that have changed while the application was not running are being indexed.
+   */
+  CATCHING_UP,
+  
+  READY,
+  
+  /**
+   * The last rebuild failed. Search results may be incomplete until the index is rebuilt.
+   */
+  FAILED
+}
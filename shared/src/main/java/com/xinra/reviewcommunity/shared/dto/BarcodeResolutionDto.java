@@ -0,0 +1,17 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import com.xinra.reviewcommunity.shared.BarcodeStatus;
+import lombok.Data;
+
+@Data
+public class BarcodeResolutionDto implements Dto {
+
+  private String barcode;
+  private BarcodeStatus status;
+  
+  /**
+   * The serial of the product if the status is {@link BarcodeStatus#FOUND}, 0 otherwise.
+   */
+  private int productSerial;
+  
+}
@@ -0,0 +1,18 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import lombok.Data;
+
+@Data
+public class FacetValueDto implements Dto {
+
+  /**
+   * A serial or number of stars, depending on the facet.
+   */
+  private int value;
+  
+  /**
+   * Number of matching products with this value.
+   */
+  private int count;
+  
+}
@@ -14,4 +14,9 @@ public class ProductDto extends SerialDto {
   private int numRatings;
   private double avgRating;
   
+  /**
+   * Number of ratings per star: [0] => one star, ..., [4] => five stars.
+   */
+  private int[] ratingHistogram;
+  
 }
@@ -0,0 +1,14 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import lombok.Data;
+
+@Data
+public class ProductImportErrorDto implements Dto {
+
+  /**
+   * Line number of the failed row, starting at 1.
+   */
+  private int row;
+  private String message;
+  
+}
@@ -0,0 +1,18 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class ProductImportReportDto implements Dto {
+
+  private int numImported;
+  private int numFailed;
+  
+  /**
+   * Errors of failed rows sorted by row. This may be truncated to the errors that occurred first,
+   * so there can be less errors than failed rows.
+   */
+  private List<ProductImportErrorDto> errors;
+  
+}
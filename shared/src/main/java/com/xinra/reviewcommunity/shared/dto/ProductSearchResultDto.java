@@ -0,0 +1,32 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class ProductSearchResultDto implements Dto {
+
+  /**
+   * The requested page of matching products.
+   */
+  private List<ProductDto> products;
+  
+  /**
+   * Number of all matching products per category serial (not including parent categories),
+   * ordered by count.
+   */
+  private List<FacetValueDto> categories;
+  
+  /**
+   * Number of all matching products per brand serial (0 for products without brand), ordered by
+   * count.
+   */
+  private List<FacetValueDto> brands;
+  
+  /**
+   * Number of all matching products per rounded down average rating (0 for products without
+   * ratings), ordered by count.
+   */
+  private List<FacetValueDto> ratings;
+  
+}
@@ -0,0 +1,12 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ProductSuggestionDto extends SerialDto {
+
+  private String name;
+  
+}
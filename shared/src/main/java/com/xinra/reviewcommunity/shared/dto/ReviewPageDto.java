@@ -0,0 +1,16 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class ReviewPageDto implements Dto {
+
+  private List<ReviewDto> reviews;
+  
+  /**
+   * Pass this to get the next page. {@code null} if this is the last page.
+   */
+  private String nextCursor;
+  
+}
@@ -0,0 +1,26 @@
+package com.xinra.reviewcommunity.shared.dto;
+
+import com.xinra.reviewcommunity.shared.SearchIndexState;
+import lombok.Data;
+
+@Data
+public class SearchIndexStatusDto implements Dto {
+
+  private SearchIndexState state;
+  
+  /**
+   * Number of products indexed by the current (or last) rebuild.
+   */
+  private long numIndexed;
+  
+  /**
+   * Number of products to index by the current (or last) rebuild.
+   */
+  private long numTotal;
+  
+  /**
+   * Time in milliseconds the oldest changed product has been waiting to be indexed.
+   */
+  private long indexLag;
+  
+}
@@ -12,4 +12,10 @@ public class SuccessfulAuthenticationDto implements Dto {
   private Set<Permission> permissions;
   private CsrfTokenDto csrfToken;
   
+  /**
+   * Authenticates subsequent requests in the {@code Authorization} header as
+   * {@code Bearer <token>}. Only set if the server doesn't use sessions.
+   */
+  private String sessionToken;
+  
 }